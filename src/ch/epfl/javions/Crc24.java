@@ -1,5 +1,7 @@
 package ch.epfl.javions;
 
+import java.util.Objects;
+
 /**
  * La classe Crc24 est publique et finale représente un calculateur de CRC de 24 bits.
  *
@@ -69,8 +71,22 @@ public final class Crc24 {
      * @return le CRC24 du tableau donné
      */
     public int crc(byte[] bytes) {
+        return crc(bytes, CRC_START, bytes.length);
+    }
+
+    /**
+     * Méthode publique retournant le CRC24 de la portion donnée du tableau donné, sans la copier
+     *
+     * @param bytes  tableau d'octets
+     * @param offset l'index du premier octet de la portion
+     * @param length le nombre d'octets de la portion
+     * @return le CRC24 de la portion donnée du tableau
+     * @throws IndexOutOfBoundsException si la portion n'est pas entièrement contenue dans le tableau
+     */
+    public int crc(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
         int crc = CRC_START;
-        for (int i = CRC_START; i < bytes.length; i++) {
+        for (int i = offset; i < offset + length; i++) {
             crc = ((crc << BYTE_SIZE) | Byte.toUnsignedInt(bytes[i])) ^ table[Bits.extractUInt(crc, TABLE_START, BYTE_SIZE)];
         }
         for (int j = CRC_START; j < LSB_24 / BYTE_SIZE; j++) {
@@ -16,6 +16,7 @@ import static ch.epfl.javions.Units.Angle.*;
 public record GeoPos(int longitudeT32, int latitudeT32) {
 
     private static final int BOUND = 1 << 30;
+    private static final long LOW_MASK = (1L << Integer.SIZE) - 1;
 
 
     /**
@@ -30,6 +31,42 @@ public record GeoPos(int longitudeT32, int latitudeT32) {
     }
 
 
+    /**
+     * Cette méthode publique et statique empaquette une position dans une valeur de type long, ce qui permet de la
+     * transmettre sans allouer d'instance de GeoPos
+     *
+     * @param longitudeT32 la longitude exprimée en t32
+     * @param latitudeT32  la latitude exprimée en t32
+     * @return la position empaquetée, dont les 32 bits de poids fort contiennent la longitude et les 32 bits de poids
+     * faible la latitude
+     */
+    public static long pack(int longitudeT32, int latitudeT32) {
+        return ((long) longitudeT32 << Integer.SIZE) | (latitudeT32 & LOW_MASK);
+    }
+
+
+    /**
+     * Cette méthode publique et statique extrait la longitude d'une position empaquetée par pack
+     *
+     * @param position la position empaquetée
+     * @return la longitude exprimée en t32
+     */
+    public static int unpackLon(long position) {
+        return (int) (position >> Integer.SIZE);
+    }
+
+
+    /**
+     * Cette méthode publique et statique extrait la latitude d'une position empaquetée par pack
+     *
+     * @param position la position empaquetée
+     * @return la latitude exprimée en t32
+     */
+    public static int unpackLat(long position) {
+        return (int) position;
+    }
+
+
     /**
      * Le constructeur compact de GeoPos pour valider la latitude reçue et
      *
@@ -62,6 +99,16 @@ public record GeoPos(int longitudeT32, int latitudeT32) {
     }
 
 
+    /**
+     * Cette méthode publique empaquette la position dans une valeur de type long au moyen de pack
+     *
+     * @return la position empaquetée
+     */
+    public long packed() {
+        return pack(longitudeT32, latitudeT32);
+    }
+
+
     /**
      * Une redéfinition de la méthode toString de Object
      *
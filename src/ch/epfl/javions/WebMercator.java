@@ -1,7 +1,10 @@
 package ch.epfl.javions;
 
 import static ch.epfl.javions.Math2.asinh;
+import static ch.epfl.javions.Units.Angle.RADIAN;
+import static ch.epfl.javions.Units.Angle.T32;
 import static ch.epfl.javions.Units.Angle.TURN;
+import static ch.epfl.javions.Units.convert;
 import static ch.epfl.javions.Units.convertTo;
 
 
@@ -40,4 +43,29 @@ public final class WebMercator {
         return zl1 * lat;
     }
 
+
+    /**
+     * Cette méthode est équivalente à x, mais reçoit une position empaquetée par GeoPos.pack ; elle porte un nom
+     * distinct pour qu'un angle de type long ne puisse pas être pris pour une position empaquetée
+     *
+     * @param zoomLevel niveau de zoom
+     * @param position  la position empaquetée
+     * @return la coordonnée x correspondant à la longitude de la position au niveau de zoom donné
+     */
+    public static double xOfPacked(int zoomLevel, long position) {
+        return x(zoomLevel, convert(GeoPos.unpackLon(position), T32, RADIAN));
+    }
+
+
+    /**
+     * Cette méthode est équivalente à y, mais reçoit une position empaquetée par GeoPos.pack
+     *
+     * @param zoomLevel niveau de zoom
+     * @param position  la position empaquetée
+     * @return la coordonnée y correspondant à la latitude de la position au niveau de zoom donné
+     */
+    public static double yOfPacked(int zoomLevel, long position) {
+        return y(zoomLevel, convert(GeoPos.unpackLat(position), T32, RADIAN));
+    }
+
 }
@@ -0,0 +1,237 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.aircraft.IcaoAddress;
+
+import java.util.Objects;
+
+/**
+ * La classe AircraftState publique et finale représente l'état modifiable d'un aéronef, stocké dans des attributs
+ * primitifs et indépendant de JavaFX. Elle mémorise en outre l'ensemble des attributs modifiés depuis le dernier
+ * appel à clearUpdatedFields, sous la forme d'un ensemble de bits formé des constantes TIME_STAMP, CATEGORY, etc.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class AircraftState implements AircraftStateSetter {
+
+    public static final int TIME_STAMP = 1;
+    public static final int CATEGORY = 1 << 1;
+    public static final int CALL_SIGN = 1 << 2;
+    public static final int POSITION = 1 << 3;
+    public static final int ALTITUDE = 1 << 4;
+    public static final int VELOCITY = 1 << 5;
+    public static final int TRACK_OR_HEADING = 1 << 6;
+    private final IcaoAddress icaoAddress;
+    private int updatedFields;
+    private long lastMessageTimeStampNs;
+    private int category;
+    private CallSign callSign;
+    private long position = CprDecoder.NO_POSITION;
+    private double altitude;
+    private double velocity;
+    private double trackOrHeading;
+
+
+    /**
+     * Le constructeur public retourne l'état, encore inconnu, de l'aéronef d'adresse OACI donnée.
+     *
+     * @param icaoAddress l'adresse OACI de l'aéronef.
+     * @throws NullPointerException si l'adresse est nulle.
+     */
+    public AircraftState(IcaoAddress icaoAddress) {
+        this.icaoAddress = Objects.requireNonNull(icaoAddress);
+    }
+
+
+    /**
+     * Retourne l'adresse OACI de l'aéronef.
+     *
+     * @return l'adresse OACI de l'aéronef.
+     */
+    public IcaoAddress getIcaoAddress() {
+        return icaoAddress;
+    }
+
+
+    /**
+     * Retourne l'ensemble des attributs modifiés depuis le dernier appel à clearUpdatedFields.
+     *
+     * @return l'ensemble des attributs modifiés, sous la forme d'un ensemble de bits.
+     */
+    public int getUpdatedFields() {
+        return updatedFields;
+    }
+
+
+    /**
+     * Vide l'ensemble des attributs modifiés.
+     */
+    public void clearUpdatedFields() {
+        updatedFields = 0;
+    }
+
+
+    /**
+     * Copie la valeur de tous les attributs dans l'état donné, et ajoute l'ensemble des attributs modifiés à celui
+     * de l'état donné.
+     *
+     * @param target l'état dans lequel copier celui-ci.
+     */
+    public void copyTo(AircraftState target) {
+        target.lastMessageTimeStampNs = lastMessageTimeStampNs;
+        target.category = category;
+        target.callSign = callSign;
+        target.position = position;
+        target.altitude = altitude;
+        target.velocity = velocity;
+        target.trackOrHeading = trackOrHeading;
+        target.updatedFields |= updatedFields;
+    }
+
+
+    /**
+     * Retourne l'horodatage du dernier message reçu de l'aéronef.
+     *
+     * @return l'horodatage du dernier message, en nanosecondes.
+     */
+    public long getLastMessageTimeStampNs() {
+        return lastMessageTimeStampNs;
+    }
+
+
+    /**
+     * Retourne la catégorie de l'aéronef.
+     *
+     * @return la catégorie de l'aéronef.
+     */
+    public int getCategory() {
+        return category;
+    }
+
+
+    /**
+     * Retourne l'indicatif de l'aéronef.
+     *
+     * @return l'indicatif de l'aéronef, ou null s'il est encore inconnu.
+     */
+    public CallSign getCallSign() {
+        return callSign;
+    }
+
+
+    /**
+     * Retourne vrai si et seulement si la position de l'aéronef est connue.
+     *
+     * @return vrai si et seulement si la position de l'aéronef est connue.
+     */
+    public boolean hasPosition() {
+        return position != CprDecoder.NO_POSITION;
+    }
+
+
+    /**
+     * Retourne la position empaquetée de l'aéronef (voir GeoPos.pack).
+     *
+     * @return la position empaquetée de l'aéronef, ou CprDecoder.NO_POSITION si elle est encore inconnue.
+     */
+    public long getPackedPosition() {
+        return position;
+    }
+
+
+    /**
+     * Retourne la position de l'aéronef.
+     *
+     * @return la position de l'aéronef, ou null si elle est encore inconnue.
+     */
+    public GeoPos getPosition() {
+        return hasPosition() ? new GeoPos(GeoPos.unpackLon(position), GeoPos.unpackLat(position)) : null;
+    }
+
+
+    /**
+     * Retourne l'altitude de l'aéronef.
+     *
+     * @return l'altitude de l'aéronef, en mètres.
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+
+
+    /**
+     * Retourne la vitesse de l'aéronef.
+     *
+     * @return la vitesse de l'aéronef, en mètres par seconde.
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+
+    /**
+     * Retourne la direction de l'aéronef.
+     *
+     * @return la direction de l'aéronef, en radians.
+     */
+    public double getTrackOrHeading() {
+        return trackOrHeading;
+    }
+
+
+    @Override
+    public void setLastMessageTimeStampNs(long timeStampNs) {
+        this.lastMessageTimeStampNs = timeStampNs;
+        updatedFields |= TIME_STAMP;
+    }
+
+
+    @Override
+    public void setCategory(int category) {
+        this.category = category;
+        updatedFields |= CATEGORY;
+    }
+
+
+    @Override
+    public void setCallSign(CallSign callSign) {
+        this.callSign = callSign;
+        updatedFields |= CALL_SIGN;
+    }
+
+
+    @Override
+    public void setPosition(GeoPos position) {
+        setPosition(position.packed());
+    }
+
+
+    @Override
+    public void setPosition(long position) {
+        this.position = position;
+        updatedFields |= POSITION;
+    }
+
+
+    @Override
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        updatedFields |= ALTITUDE;
+    }
+
+
+    @Override
+    public void setVelocity(double velocity) {
+        this.velocity = velocity;
+        updatedFields |= VELOCITY;
+    }
+
+
+    @Override
+    public void setTrackOrHeading(double trackOrHeading) {
+        this.trackOrHeading = trackOrHeading;
+        updatedFields |= TRACK_OR_HEADING;
+    }
+
+}
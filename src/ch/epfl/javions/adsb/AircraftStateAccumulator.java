@@ -1,6 +1,7 @@
 package ch.epfl.javions.adsb;
 
 import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Units;
 
 import java.util.Objects;
 
@@ -19,9 +20,25 @@ public class AircraftStateAccumulator<T extends AircraftStateSetter> {
     private final static int PAIR = 0;
     private final static int IMPAIR = 1;
     private final static long BOUND = 10000000000L;
+    private final static long NO_MESSAGE = -1;
+    private final static double EARTH_RADIUS = 6_371 * Units.Length.KILOMETER;
+    private final static double MAX_RECEIVER_RANGE = 160 * Units.Length.NAUTICAL_MILE;
+    // la portée au-delà de laquelle une position décodée par rapport au récepteur est rejetée, nettement inférieure à
+    // la demi-zone (environ 180 milles marins) au-delà de laquelle le décodage local devient ambigu
+    private final static double MAX_SPEED = 1000 * Units.Speed.METRE_PER_SECOND;
+    private final static double POSITION_MARGIN = Units.Length.KILOMETER;
+    // une position décodée localement est rejetée si elle est plus éloignée de la référence que ce qu'un aéronef
+    // volant à MAX_SPEED peut parcourir depuis celle-ci, à POSITION_MARGIN près
     private final T stateSetter;
-    private Message messagePair;
-    private Message messageImpair;
+    private double xPair;
+    private double yPair;
+    private long timeStampPair = NO_MESSAGE;
+    private double xImpair;
+    private double yImpair;
+    private long timeStampImpair = NO_MESSAGE;
+    private final long receiverPosition;
+    private long lastPosition = CprDecoder.NO_POSITION;
+    private long lastPositionTimeStampNs;
 
 
     /**
@@ -30,8 +47,27 @@ public class AircraftStateAccumulator<T extends AircraftStateSetter> {
      * @param stateSetter l'état modifiable.
      */
     public AircraftStateAccumulator(T stateSetter) {
+        this(stateSetter, null);
+    }
+
+
+    /**
+     * Constructeur public de la classe retournant un accumulateur d'état d'aéronef associé à l'état modifiable donne,
+     * qui décode localement les messages de positionnement qui ne peuvent pas être décodés par paire. La position
+     * décodée à partir d'une paire de messages reste la référence : elle remplace toute position décodée localement
+     * dès qu'elle est disponible. À défaut, la dernière position connue de l'aéronef sert de référence tant qu'elle
+     * date de moins de 10 secondes, et sinon la position du récepteur. Une position décodée par rapport au récepteur
+     * n'est acceptée que si elle se trouve à sa portée, et une position décodée par rapport à la dernière position
+     * connue n'est acceptée que si l'aéronef a pu l'atteindre.
+     *
+     * @param stateSetter      l'état modifiable.
+     * @param receiverPosition la position du récepteur, ou null pour n'utiliser que les paires de messages.
+     * @throws NullPointerException si l'état modifiable est nul
+     */
+    public AircraftStateAccumulator(T stateSetter, GeoPos receiverPosition) {
         Objects.requireNonNull(stateSetter);
         this.stateSetter = stateSetter;
+        this.receiverPosition = (receiverPosition == null) ? CprDecoder.NO_POSITION : receiverPosition.packed();
     }
 
 
@@ -60,39 +96,24 @@ public class AircraftStateAccumulator<T extends AircraftStateSetter> {
 
             case AirbornePositionMessage m -> {
                 stateSetter.setAltitude(m.altitude());
-                int parite = m.parity();
-
-                if (parite == PAIR) {
-                    messagePair = m;
-                    if (messageImpair == null) {
-                        break;
-                    }
-
-                    if ((m.timeStampNs() - messageImpair.timeStampNs()) <= BOUND) {
-                        GeoPos position = CprDecoder.decodePosition(m.x(), m.y(), ((AirbornePositionMessage) messageImpair).x(), ((AirbornePositionMessage) messageImpair).y(), parite);
-                        if (position == null) {
-                            break;
-                        } else {
-                            stateSetter.setPosition(position);
-                        }
-                    }
-                    messagePair = m;
-
-                } else if (parite == IMPAIR) {
-                    messageImpair = m;
-                    if (messagePair == null) {
-                        break;
-                    }
-
-                    if ((m.timeStampNs() - messagePair.timeStampNs()) <= BOUND) {
-                        GeoPos position = CprDecoder.decodePosition(((AirbornePositionMessage) messagePair).x(), ((AirbornePositionMessage) messagePair).y(), m.x(), m.y(), parite);
-                        if (position == null) {
-                            break;
-                        } else {
-                            stateSetter.setPosition(position);
-                        }
-                    }
-                    messageImpair = m;
+                long position = pairPosition(m);
+                if (position == CprDecoder.NO_POSITION) {
+                    position = localPosition(m);
+                }
+                if (m.parity() == PAIR) {
+                    xPair = m.x();
+                    yPair = m.y();
+                    timeStampPair = m.timeStampNs();
+                } else {
+                    xImpair = m.x();
+                    yImpair = m.y();
+                    timeStampImpair = m.timeStampNs();
+                }
+
+                if (position != CprDecoder.NO_POSITION) {
+                    stateSetter.setPosition(position);
+                    lastPosition = position;
+                    lastPositionTimeStampNs = m.timeStampNs();
                 }
             }
             case AirborneVelocityMessage m2 -> {
@@ -105,5 +126,50 @@ public class AircraftStateAccumulator<T extends AircraftStateSetter> {
 
     }
 
+
+    // Méthode qui décode la position du message donné par rapport à la dernière position connue si elle est récente,
+    // ou à défaut par rapport à celle du récepteur, et retourne NO_POSITION si la position obtenue n'est pas
+    // plausible.
+    private long localPosition(AirbornePositionMessage m) {
+        long elapsedNs = m.timeStampNs() - lastPositionTimeStampNs;
+        if (lastPosition != CprDecoder.NO_POSITION && elapsedNs <= BOUND) {
+            long position = CprDecoder.decodeLocalPackedPosition(m.x(), m.y(), m.parity(), lastPosition);
+            double maxDistance = MAX_SPEED * elapsedNs * 1e-9 + POSITION_MARGIN;
+            return (position != CprDecoder.NO_POSITION && distance(position, lastPosition) <= maxDistance)
+                    ? position
+                    : CprDecoder.NO_POSITION;
+        }
+        if (receiverPosition != CprDecoder.NO_POSITION) {
+            long position = CprDecoder.decodeLocalPackedPosition(m.x(), m.y(), m.parity(), receiverPosition);
+            return (position != CprDecoder.NO_POSITION && distance(position, receiverPosition) <= MAX_RECEIVER_RANGE)
+                    ? position
+                    : CprDecoder.NO_POSITION;
+        }
+        return CprDecoder.NO_POSITION;
+    }
+
+
+    // Méthode qui retourne la distance approximative, en mètres, entre deux positions empaquetées proches ; la
+    // différence des longitudes, calculée sur des int, tient compte de l'antiméridien.
+    private static double distance(long from, long to) {
+        double latitude = Units.Angle.T32 * GeoPos.unpackLat(from);
+        double dx = (GeoPos.unpackLon(to) - GeoPos.unpackLon(from)) * Units.Angle.T32 * Math.cos(latitude);
+        double dy = ((double) GeoPos.unpackLat(to) - GeoPos.unpackLat(from)) * Units.Angle.T32;
+        return Math.hypot(dx, dy) * EARTH_RADIUS;
+    }
+
+
+    // Méthode qui décode la position à partir du message donné et du dernier message de parité opposée,
+    // ou retourne NO_POSITION si ce dernier n'existe pas ou est trop ancien.
+    private long pairPosition(AirbornePositionMessage m) {
+        long otherTimeStamp = (m.parity() == PAIR) ? timeStampImpair : timeStampPair;
+        if (otherTimeStamp == NO_MESSAGE || (m.timeStampNs() - otherTimeStamp) > BOUND) {
+            return CprDecoder.NO_POSITION;
+        }
+        return (m.parity() == PAIR)
+                ? CprDecoder.decodePackedPosition(m.x(), m.y(), xImpair, yImpair, PAIR)
+                : CprDecoder.decodePackedPosition(xPair, yPair, m.x(), m.y(), IMPAIR);
+    }
+
 }
 
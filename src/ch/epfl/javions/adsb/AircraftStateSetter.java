@@ -44,6 +44,15 @@ public interface AircraftStateSetter {
     abstract void setPosition(GeoPos position);
 
 
+    /**
+     * Cette méthode change la position de l'aéronef à la position empaquetée donnée (voir GeoPos.pack). C'est elle
+     * qu'utilise l'accumulateur d'état, chaque implémentation décidant s'il lui faut une instance de GeoPos.
+     *
+     * @param position la position empaquetée de l'aéronef.
+     */
+    abstract void setPosition(long position);
+
+
     /**
      * Cette méthode change l'altitude de l'aéronef à la valeur donnée.
      *
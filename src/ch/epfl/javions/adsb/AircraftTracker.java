@@ -0,0 +1,187 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Preconditions;
+import ch.epfl.javions.Units;
+import ch.epfl.javions.aircraft.IcaoAddress;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * La classe AircraftTracker publique et finale représente un gestionnaire d'états d'aéronefs indépendant de JavaFX,
+ * destiné aux déploiements sans affichage. Il accumule les messages dans des états de type AircraftState, oublie
+ * les aéronefs dont aucun message n'a été reçu depuis un certain temps, et signale chacun de ces événements à ses
+ * auditeurs. Il n'est pas prévu pour être utilisé par plusieurs fils d'exécution à la fois : chaque chaîne de
+ * réception utilise son propre gestionnaire.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class AircraftTracker {
+
+    private static final long DEFAULT_PURGE_HORIZON_NS = (long) 1E9 * (long) Units.Time.MINUTE;
+    private static final long PURGE_PERIOD_NS = (long) 1E9;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final float LOAD_FACTOR = 0.75f;
+    private final Map<IcaoAddress, AircraftStateAccumulator<AircraftState>> accumulators;
+    // les accumulateurs, de celui de l'aéronef dont le dernier message est le plus ancien au plus récent
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final GeoPos receiverPosition;
+    private final long purgeHorizonNs;
+    private long currentTimeStampNs;
+    private long lastPurgeTimeStampNs;
+
+
+    /**
+     * Le constructeur public retourne un gestionnaire qui oublie les aéronefs silencieux depuis une minute.
+     *
+     * @param receiverPosition la position du récepteur, ou null si elle est inconnue.
+     */
+    public AircraftTracker(GeoPos receiverPosition) {
+        this(receiverPosition, DEFAULT_PURGE_HORIZON_NS);
+    }
+
+
+    /**
+     * Le constructeur public retourne un gestionnaire qui oublie les aéronefs silencieux depuis la durée donnée.
+     *
+     * @param receiverPosition la position du récepteur, ou null si elle est inconnue.
+     * @param purgeHorizonNs   la durée au-delà de laquelle un aéronef silencieux est oublié, en nanosecondes.
+     * @throws IllegalArgumentException si la durée n'est pas strictement positive.
+     */
+    public AircraftTracker(GeoPos receiverPosition, long purgeHorizonNs) {
+        Preconditions.checkArgument(purgeHorizonNs > 0);
+        this.receiverPosition = receiverPosition;
+        this.purgeHorizonNs = purgeHorizonNs;
+        this.accumulators = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+
+    /**
+     * Ajoute un auditeur, informé de chaque modification de l'état d'un aéronef et de chaque aéronef oublié.
+     *
+     * @param listener l'auditeur.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * Retire un auditeur.
+     *
+     * @param listener l'auditeur.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * Retourne le nombre d'aéronefs actuellement suivis.
+     *
+     * @return le nombre d'aéronefs suivis.
+     */
+    public int size() {
+        return accumulators.size();
+    }
+
+
+    /**
+     * Met à jour l'état de l'aéronef ayant envoyé le message donné, puis informe les auditeurs des attributs modifiés.
+     *
+     * @param message le message.
+     */
+    public void updateWithMessage(Message message) {
+        currentTimeStampNs = Math.max(currentTimeStampNs, message.timeStampNs());
+        AircraftStateAccumulator<AircraftState> accumulator = accumulators.get(message.icaoAddress());
+        if (accumulator == null) {
+            accumulator = new AircraftStateAccumulator<>(new AircraftState(message.icaoAddress()), receiverPosition);
+            accumulators.put(message.icaoAddress(), accumulator);
+        }
+        accumulator.update(message);
+
+        AircraftState state = accumulator.stateSetter();
+        for (Listener listener : listeners) {
+            listener.aircraftUpdated(state, state.getUpdatedFields());
+        }
+        state.clearUpdatedFields();
+    }
+
+
+    /**
+     * Oublie les aéronefs dont aucun message n'a été reçu depuis la durée donnée au constructeur, relativement
+     * au message le plus récent, et en informe les auditeurs. Seuls les aéronefs oubliés sont parcourus, les
+     * accumulateurs étant ordonnés par ancienneté de leur dernier message.
+     */
+    public void purge() {
+        Iterator<AircraftStateAccumulator<AircraftState>> iterator = accumulators.values().iterator();
+        while (iterator.hasNext()) {
+            AircraftState state = iterator.next().stateSetter();
+            if (currentTimeStampNs - state.getLastMessageTimeStampNs() <= purgeHorizonNs) {
+                break;
+            }
+            iterator.remove();
+            for (Listener listener : listeners) {
+                listener.aircraftPurged(state);
+            }
+        }
+        lastPurgeTimeStampNs = currentTimeStampNs;
+    }
+
+
+    /**
+     * Exécute la chaîne de réception complète : lit les messages bruts de la source donnée jusqu'à son épuisement, les
+     * analyse, les accumule, et oublie les aéronefs silencieux une fois par seconde (selon l'horodatage des messages).
+     *
+     * @param source la source de messages bruts, par exemple un démodulateur.
+     * @return le nombre de messages analysés.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public long run(RawMessageSource source) throws IOException {
+        long count = 0;
+        RawMessage rawMessage;
+        while ((rawMessage = source.nextMessage()) != null) {
+            Message message = MessageParser.parse(rawMessage);
+            if (message == null) continue;
+            updateWithMessage(message);
+            count++;
+            if (currentTimeStampNs - lastPurgeTimeStampNs >= PURGE_PERIOD_NS) {
+                purge();
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * L'interface Listener publique a pour but d'être implémentée par les consommateurs des états d'aéronefs.
+     * Ses méthodes sont appelées par le fil d'exécution qui alimente le gestionnaire, et ne doivent pas garder
+     * de référence à l'état au-delà de l'appel si elles le transmettent à un autre fil.
+     */
+    public interface Listener {
+
+        /**
+         * Appelée après chaque message, avec l'état de l'aéronef qui l'a envoyé.
+         *
+         * @param state         l'état de l'aéronef.
+         * @param updatedFields les attributs modifiés par le message (voir AircraftState.getUpdatedFields).
+         */
+        void aircraftUpdated(AircraftState state, int updatedFields);
+
+
+        /**
+         * Appelée lorsqu'un aéronef est oublié. Ne fait rien par défaut.
+         *
+         * @param state le dernier état de l'aéronef.
+         */
+        default void aircraftPurged(AircraftState state) {
+        }
+    }
+
+}
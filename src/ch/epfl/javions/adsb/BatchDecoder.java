@@ -0,0 +1,306 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Units;
+import ch.epfl.javions.demodulation.AdsbDemodulator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static ch.epfl.javions.adsb.AircraftState.*;
+
+/**
+ * La classe BatchDecoder publique et finale est un programme sans interface graphique qui décode des enregistrements
+ * (au format brut ou compact, plusieurs étant fusionnés par ordre chronologique, voir MergedMessageSource) ou un
+ * fichier d'échantillons, et écrit dans un fichier, sous forme de lignes CSV ou JSON, chaque message décodé, chaque
+ * modification de l'état d'un aéronef et chaque aéronef oublié. Les angles y sont donnés en degrés, les autres
+ * valeurs dans les unités de base.
+ * <p>
+ * Les messages sont répartis entre plusieurs fils d'exécution selon l'adresse OACI de leur expéditeur, chacun suivant
+ * ses aéronefs avec son propre AircraftTracker. Les lignes d'un même aéronef sont ainsi écrites par ordre
+ * chronologique, mais celles d'aéronefs différents peuvent être entrelacées par paquets.
+ * <p>
+ * {@code java ch.epfl.javions.adsb.BatchDecoder [--json] [--samples] [--threads=N] entrée... sortie}
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class BatchDecoder {
+
+    private static final String USAGE =
+            "usage : java ch.epfl.javions.adsb.BatchDecoder [--json] [--samples] [--threads=N] entrée... sortie";
+    private static final String JSON = "--json";
+    private static final String SAMPLES = "--samples";
+    private static final String THREADS = "--threads=";
+    private static final String CSV_HEADER = "kind,timeStampNs,icaoAddress,type,category,callSign,longitude,"
+            + "latitude,altitude,velocity,trackOrHeading";
+    private static final String CSV_EMPTY_STATE = ",,,,,,,";
+    private static final String MESSAGE = "message";
+    private static final String STATE = "state";
+    private static final String PURGED = "purged";
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final int PARTITION_QUEUE_CAPACITY = 1 << 14;
+    private static final int BATCH_SIZE = 1024;
+    private static final long PURGE_PERIOD_NS = 1_000_000_000L;
+    private static final int ICAO_START = 1;
+    private static final int ICAO_END = 4;
+
+    private BatchDecoder() {
+    }
+
+
+    /**
+     * Le programme principal décode les entrées données, puis affiche le nombre de messages décodés par seconde.
+     *
+     * @param args les options, les fichiers d'entrée et le fichier de sortie.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean json = false;
+        boolean samples = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals(JSON)) json = true;
+            else if (arg.equals(SAMPLES)) samples = true;
+            else if (arg.startsWith(THREADS)) threads = Integer.parseInt(arg.substring(THREADS.length()));
+            else files.add(Path.of(arg));
+        }
+        if (files.size() < 2 || threads < 1 || (samples && files.size() != 2)) {
+            System.err.println(USAGE);
+            return;
+        }
+        List<Path> inputs = files.subList(0, files.size() - 1);
+        Path output = files.get(files.size() - 1);
+
+        long start = System.nanoTime();
+        long[] counts;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output),
+                StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE)) {
+            if (!json) writer.write(CSV_HEADER + System.lineSeparator());
+            if (samples) {
+                try (InputStream stream = Files.newInputStream(inputs.get(0))) {
+                    counts = decode(new AdsbDemodulator(stream), writer, json, threads);
+                }
+            } else if (inputs.size() > 1 || Files.isDirectory(inputs.get(0))) {
+                try (MergedMessageSource source = new MergedMessageSource(inputs)) {
+                    counts = decode(source, writer, json, threads);
+                }
+            } else if (CompactRecordingReader.isCompact(inputs.get(0))) {
+                try (CompactRecordingReader source = new CompactRecordingReader(inputs.get(0))) {
+                    counts = decode(source, writer, json, threads);
+                }
+            } else {
+                try (RawMessageReader source = new RawMessageReader(inputs.get(0))) {
+                    counts = decode(source, writer, json, threads);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1E9;
+        System.out.printf("%,d messages bruts, %,d messages décodés en %.2f s (%,.0f messages/s)%n",
+                counts[0], counts[1], seconds, counts[1] / seconds);
+    }
+
+
+    // Méthode qui répartit les messages de la source donnée entre les fils de décodage, et retourne le nombre de
+    // messages bruts lus et le nombre de messages décodés.
+    private static long[] decode(RawMessageSource source, Writer writer, boolean json, int threads)
+            throws IOException {
+        Partition[] partitions = new Partition[threads];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            partitions[i] = new Partition(writer, json);
+            futures.add(executor.submit(partitions[i]));
+        }
+
+        long read = 0;
+        long decoded = 0;
+        try {
+            RawMessage message;
+            while ((message = source.nextMessage()) != null) {
+                int p = (int) (message.bytes().bytesInRange(ICAO_START, ICAO_END) % threads);
+                if (!partitions[p].queue.put(message)) {
+                    // la file d'une partition n'est fermée avant la fin que si son décodage a échoué : son erreur est
+                    // obtenue de son résultat, et les autres partitions sont arrêtées par le bloc finally
+                    futures.get(p).get();
+                    throw new IOException("partition " + p + " stopped before the end of the input");
+                }
+                read++;
+            }
+            for (Partition partition : partitions) {
+                partition.queue.close();
+            }
+            for (Future<Long> future : futures) {
+                decoded += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (Partition partition : partitions) {
+                partition.queue.close();
+            }
+            executor.shutdownNow();
+        }
+        return new long[]{read, decoded};
+    }
+
+
+    // Une partition des aéronefs : la file de ses messages, son gestionnaire d'états, et les lignes qu'elle a produites
+    // mais pas encore écrites, transmises d'un coup à l'écrivain partagé.
+    private static final class Partition implements Callable<Long>, AircraftTracker.Listener {
+        private final RawMessageQueue queue =
+                new RawMessageQueue(PARTITION_QUEUE_CAPACITY, RawMessageQueue.OverflowPolicy.BLOCK);
+        private final AircraftTracker tracker = new AircraftTracker(null);
+        private final StringBuilder lines = new StringBuilder(2 * CHUNK_SIZE);
+        private final Writer writer;
+        private final boolean json;
+
+        private Partition(Writer writer, boolean json) {
+            this.writer = writer;
+            this.json = json;
+            tracker.addListener(this);
+        }
+
+        @Override
+        public Long call() throws InterruptedException {
+            try {
+                RawMessage[] batch = new RawMessage[BATCH_SIZE];
+                long decoded = 0;
+                long lastPurgeTimeStampNs = 0;
+                RawMessage first;
+                while ((first = queue.take()) != null) {
+                    int count = queue.drainTo(batch);
+                    for (int i = -1; i < count; i++) {
+                        Message message = MessageParser.parse(i < 0 ? first : batch[i]);
+                        if (message == null) continue;
+                        decoded++;
+                        appendLine(MESSAGE, message.timeStampNs(), message.icaoAddress().string(),
+                                message.getClass().getSimpleName());
+                        if (!json) lines.append(CSV_EMPTY_STATE);
+                        endLine();
+                        tracker.updateWithMessage(message);
+                        if (message.timeStampNs() - lastPurgeTimeStampNs >= PURGE_PERIOD_NS) {
+                            tracker.purge();
+                            lastPurgeTimeStampNs = message.timeStampNs();
+                        }
+                    }
+                    if (lines.length() >= CHUNK_SIZE) flush();
+                }
+                flush();
+                return decoded;
+            } finally {
+                // si le décodage échoue, la file est fermée pour que le fil qui l'alimente ne reste pas bloqué
+                queue.close();
+            }
+        }
+
+        @Override
+        public void aircraftUpdated(AircraftState state, int updatedFields) {
+            if ((updatedFields & ~TIME_STAMP) == 0) return;
+            appendLine(STATE, state.getLastMessageTimeStampNs(), state.getIcaoAddress().string(), null);
+            appendState(state, updatedFields);
+            endLine();
+        }
+
+        @Override
+        public void aircraftPurged(AircraftState state) {
+            appendLine(PURGED, state.getLastMessageTimeStampNs(), state.getIcaoAddress().string(), null);
+            if (!json) lines.append(CSV_EMPTY_STATE);
+            endLine();
+        }
+
+        private void appendLine(String kind, long timeStampNs, String icaoAddress, String type) {
+            if (json) {
+                lines.append("{\"kind\":\"").append(kind).append("\",\"timeStampNs\":").append(timeStampNs)
+                        .append(",\"icaoAddress\":\"").append(icaoAddress).append('"');
+                if (type != null) lines.append(",\"type\":\"").append(type).append('"');
+            } else {
+                lines.append(kind).append(',').append(timeStampNs).append(',').append(icaoAddress).append(',');
+                if (type != null) lines.append(type);
+            }
+        }
+
+        // Méthode qui ajoute à la ligne en cours les attributs modifiés de l'état donné ; en CSV, les colonnes des
+        // attributs non modifiés restent vides.
+        private void appendState(AircraftState state, int fields) {
+            boolean position = (fields & POSITION) != 0;
+            GeoPos pos = position ? state.getPosition() : null;
+            appendField("category", (fields & CATEGORY) != 0, state.getCategory());
+            appendField("callSign", (fields & CALL_SIGN) != 0 && state.getCallSign() != null,
+                    state.getCallSign() == null ? null : state.getCallSign().string());
+            appendField("longitude", position, position ? Units.convertTo(pos.longitude(), Units.Angle.DEGREE) : 0);
+            appendField("latitude", position, position ? Units.convertTo(pos.latitude(), Units.Angle.DEGREE) : 0);
+            appendField("altitude", (fields & ALTITUDE) != 0, state.getAltitude());
+            appendField("velocity", (fields & VELOCITY) != 0, state.getVelocity());
+            appendField("trackOrHeading", (fields & TRACK_OR_HEADING) != 0,
+                    Units.convertTo(state.getTrackOrHeading(), Units.Angle.DEGREE));
+        }
+
+        private void appendField(String name, boolean present, double value) {
+            if (json) {
+                if (present) lines.append(",\"").append(name).append("\":").append(value);
+            } else {
+                lines.append(',');
+                if (present) lines.append(value);
+            }
+        }
+
+        private void appendField(String name, boolean present, int value) {
+            if (json) {
+                if (present) lines.append(",\"").append(name).append("\":").append(value);
+            } else {
+                lines.append(',');
+                if (present) lines.append(value);
+            }
+        }
+
+        private void appendField(String name, boolean present, String value) {
+            if (json) {
+                if (present) lines.append(",\"").append(name).append("\":\"").append(value).append('"');
+            } else {
+                lines.append(',');
+                if (present) lines.append(value);
+            }
+        }
+
+        private void endLine() {
+            if (json) lines.append('}');
+            lines.append(System.lineSeparator());
+        }
+
+        private void flush() {
+            try {
+                synchronized (writer) {
+                    writer.append(lines);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lines.setLength(0);
+        }
+    }
+
+}
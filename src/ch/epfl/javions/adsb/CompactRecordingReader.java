@@ -0,0 +1,350 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import ch.epfl.javions.Crc24;
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static ch.epfl.javions.adsb.CompactRecordingWriter.*;
+
+/**
+ * La classe CompactRecordingReader publique et finale représente un lecteur d'enregistrement au format compact, écrit
+ * par CompactRecordingWriter. Les blocs suivant celui en cours de lecture sont lus et décompressés d'avance, en
+ * parallèle, par un groupe de fils d'exécution, si bien que le consommateur n'attend pas la décompression. L'index du
+ * fichier permet en outre de reprendre la lecture à n'importe quel instant (voir seek).
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class CompactRecordingReader implements RawMessageSource, Closeable {
+
+    private static final int READ_AHEAD_PER_THREAD = 2;
+    private static final Crc24 CRC = new Crc24(Crc24.GENERATOR);
+
+    private final FileChannel channel;
+    private final long[] blockTimeStamps;
+    private final long[] blockOffsets;
+    private final long messageCount;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+    // les blocs en cours de lecture, dans l'ordre du fichier
+    private final byte[] bytes = new byte[RawMessage.LENGTH];
+    private int nextBlock;
+    // le prochain bloc à lire
+    private Block block;
+    private int indexInBlock;
+
+
+    /**
+     * Le constructeur public ouvre l'enregistrement stocké dans le fichier donné, et le décompresse avec autant de
+     * fils d'exécution que de processeurs.
+     *
+     * @param file le fichier.
+     * @throws IOException en cas d'erreur d'entrée/sortie, ou si le fichier n'est pas au format compact.
+     */
+    public CompactRecordingReader(Path file) throws IOException {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Le constructeur public ouvre l'enregistrement stocké dans le fichier donné, et le décompresse avec le nombre de
+     * fils d'exécution donné.
+     *
+     * @param file    le fichier.
+     * @param threads le nombre de fils d'exécution.
+     * @throws IllegalArgumentException si le nombre de fils n'est pas strictement positif.
+     * @throws IOException              en cas d'erreur d'entrée/sortie, ou si le fichier n'est pas au format compact.
+     */
+    public CompactRecordingReader(Path file, int threads) throws IOException {
+        Preconditions.checkArgument(threads > 0);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FILE_HEADER_SIZE + TRAILER_SIZE || !isCompact(channel)) {
+                throw new IOException("not a compact recording: " + file);
+            }
+            ByteBuffer trailer = readFully(size - TRAILER_SIZE, TRAILER_SIZE);
+            long indexOffset = trailer.getLong();
+            this.messageCount = trailer.getLong();
+            int blockCount = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("incomplete compact recording: " + file);
+            }
+            ByteBuffer index = readFully(indexOffset, blockCount * INDEX_ENTRY_SIZE);
+            this.blockTimeStamps = new long[blockCount];
+            this.blockOffsets = new long[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blockTimeStamps[i] = index.getLong();
+                blockOffsets[i] = index.getLong();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.readAhead = READ_AHEAD_PER_THREAD * threads;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "recording-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Retourne vrai si et seulement si le fichier donné est un enregistrement au format compact.
+     *
+     * @param file le fichier.
+     * @return vrai si et seulement si le fichier commence par l'en-tête du format compact.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public static boolean isCompact(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return isCompact(channel);
+        }
+    }
+
+
+    /**
+     * Retourne le nombre total de messages de l'enregistrement.
+     *
+     * @return le nombre de messages.
+     */
+    public long messageCount() {
+        return messageCount;
+    }
+
+
+    /**
+     * Reprend la lecture au premier message dont l'horodatage est supérieur ou égal à celui donné. Seul le bloc
+     * contenant ce message est décompressé, après une recherche dichotomique dans l'index.
+     *
+     * @param timeStampNs l'horodatage, en nanosecondes.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public void seek(long timeStampNs) throws IOException {
+        for (Future<Block> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        block = null;
+        // le dernier bloc commençant strictement avant l'instant donné est le premier à pouvoir le contenir
+        int i = Arrays.binarySearch(blockTimeStamps, timeStampNs);
+        int first = i < 0 ? -i - 2 : i - 1;
+        while (first >= 0 && blockTimeStamps[first] == timeStampNs) first--;
+        nextBlock = Math.max(first, 0);
+
+        while (true) {
+            if ((block == null || indexInBlock == block.count()) && !nextBlock()) return;
+            if (block.timeStamps()[indexInBlock] >= timeStampNs) return;
+            indexInBlock++;
+        }
+    }
+
+
+    /**
+     * Retourne le prochain message de l'enregistrement, ou null s'il n'y en a plus.
+     *
+     * @return le prochain message brut, ou null à la fin de l'enregistrement.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    @Override
+    public RawMessage nextMessage() throws IOException {
+        while (block == null || indexInBlock == block.count()) {
+            if (!nextBlock()) return null;
+        }
+        System.arraycopy(block.bytes(), indexInBlock * RawMessage.LENGTH, bytes, 0, RawMessage.LENGTH);
+        return new RawMessage(block.timeStamps()[indexInBlock++], new ByteString(bytes));
+    }
+
+
+    /**
+     * Arrête les fils de décompression et ferme le fichier de l'enregistrement.
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        channel.close();
+    }
+
+
+    // Méthode qui passe au bloc suivant, et retourne faux s'il n'y en a plus. Les blocs suivants sont soumis aux fils
+    // de décompression avant et après l'attente, pour qu'il y en ait toujours readAhead en cours.
+    private boolean nextBlock() throws IOException {
+        submitAhead();
+        Future<Block> future = pending.poll();
+        if (future == null) {
+            block = null;
+            return false;
+        }
+        try {
+            block = future.get();
+            indexInBlock = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+        submitAhead();
+        return true;
+    }
+
+
+    private void submitAhead() {
+        while (pending.size() < readAhead && nextBlock < blockOffsets.length) {
+            int b = nextBlock++;
+            pending.add(executor.submit(() -> readBlock(b)));
+        }
+    }
+
+
+    // Méthode, appelée par les fils de décompression, qui lit et décompresse le bloc d'index donné, puis reconstitue
+    // les octets de chaque message à partir des colonnes, de son aéronef et du message avec lequel il a été combiné,
+    // et recalcule son CRC s'il n'a pas été stocké.
+    private Block readBlock(int b) throws IOException {
+        ByteBuffer header = readFully(blockOffsets[b], BLOCK_HEADER_SIZE);
+        long timeStampNs = header.getLong();
+        int count = header.getInt();
+        int rawLength = header.getInt();
+        int compressedLength = header.getInt();
+        boolean crcOmitted = (header.getInt() & CRC_OMITTED) != 0;
+        ByteBuffer compressed = readFully(blockOffsets[b] + BLOCK_HEADER_SIZE, compressedLength);
+
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, compressedLength);
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += n;
+            }
+            if (length != rawLength) throw new EOFException("truncated block " + b);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        long[] timeStamps = new long[count];
+        ByteBuffer content = ByteBuffer.wrap(raw);
+        long divisor = getVarint(content);
+        for (int i = 0; i < count; i++) {
+            timeStampNs += getVarint(content) * divisor;
+            timeStamps[i] = timeStampNs;
+        }
+        long aircraftCount = getVarint(content);
+        if (aircraftCount > count) throw new IOException("corrupted block " + b);
+        int ids = content.position() + ICAO_LENGTH * (int) aircraftCount;
+        int firsts = ids + AIRCRAFT_ID_LENGTH * count;
+        int typeCodes = firsts + count;
+        int combined = typeCodes + count;
+        int crcs = combined + (RawMessage.LENGTH - CRC_LENGTH - TYPE_CODE_INDEX - 1) * count;
+        if ((crcOmitted ? crcs : crcs + CRC_LENGTH * count) != rawLength) throw new IOException("corrupted block " + b);
+        int[] addresses = new int[(int) aircraftCount];
+        for (int j = 0; j < ICAO_LENGTH; j++) {
+            for (int a = 0; a < aircraftCount; a++) {
+                addresses[a] = (addresses[a] << Byte.SIZE) | Byte.toUnsignedInt(content.get());
+            }
+        }
+
+        byte[] bytes = new byte[count * RawMessage.LENGTH];
+        LastOccurrences references = new LastOccurrences(count);
+        int crcStart = RawMessage.LENGTH - CRC_LENGTH;
+        for (int i = 0, start = 0; i < count; i++, start += RawMessage.LENGTH) {
+            int id = Byte.toUnsignedInt(raw[ids + i]) | Byte.toUnsignedInt(raw[ids + count + i]) << Byte.SIZE;
+            if (id >= aircraftCount) throw new IOException("corrupted block " + b);
+            bytes[start] = raw[firsts + i];
+            for (int j = 0; j < ICAO_LENGTH; j++) {
+                bytes[start + ICAO_START + j] = (byte) (addresses[id] >>> (Byte.SIZE * (ICAO_LENGTH - 1 - j)));
+            }
+            bytes[start + TYPE_CODE_INDEX] = raw[typeCodes + i];
+            int reference = references.replace(referenceKey(id, bytes[start], bytes[start + TYPE_CODE_INDEX],
+                    raw[combined + (PARITY_INDEX - TYPE_CODE_INDEX - 1) * count + i]), i);
+            for (int j = TYPE_CODE_INDEX + 1, column = combined; j < crcStart; j++, column += count) {
+                bytes[start + j] = reference < 0
+                        ? raw[column + i]
+                        : (byte) (raw[column + i] ^ (bytes[reference * RawMessage.LENGTH + j] & combinedMask(j)));
+            }
+            if (crcOmitted) {
+                int crc = CRC.crc(bytes, start, crcStart);
+                for (int j = 0; j < CRC_LENGTH; j++) {
+                    bytes[start + crcStart + j] = (byte) (crc >>> (Byte.SIZE * (CRC_LENGTH - 1 - j)));
+                }
+            } else {
+                for (int j = 0; j < CRC_LENGTH; j++) {
+                    bytes[start + crcStart + j] = raw[crcs + j * count + i];
+                }
+            }
+        }
+        return new Block(timeStamps, bytes);
+    }
+
+
+    // Méthode qui lit l'entier de taille variable commençant à la position du tampon donné.
+    private static long getVarint(ByteBuffer content) throws EOFException {
+        long value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            if (!content.hasRemaining()) throw new EOFException();
+            next = content.get();
+            value |= (long) (next & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while (next < 0);
+        return value;
+    }
+
+
+    // les lectures positionnelles d'un FileChannel peuvent être faites par plusieurs fils à la fois.
+    private ByteBuffer readFully(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+
+    private static boolean isCompact(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) return false;
+        }
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+
+    // les messages d'un bloc décompressé : leurs horodatages, et leurs octets mis bout à bout.
+    private record Block(long[] timeStamps, byte[] bytes) {
+        int count() {
+            return timeStamps.length;
+        }
+    }
+
+}
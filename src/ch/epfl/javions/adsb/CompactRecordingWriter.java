@@ -0,0 +1,349 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Crc24;
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * La classe CompactRecordingWriter publique et finale représente un enregistreur de messages bruts au format compact,
+ * relu par CompactRecordingReader. Les messages sont regroupés en blocs, compressés indépendamment les uns des autres :
+ * <ul>
+ *     <li>un bloc commence par un en-tête contenant l'horodatage de son premier message, son nombre de messages, les
+ *     tailles de son contenu avant et après compression, et ses options ;</li>
+ *     <li>son contenu donne d'abord le plus grand diviseur commun des écarts entre l'horodatage de chaque message et
+ *     celui du précédent, puis ces écarts divisés par lui, sous la forme d'entiers de taille variable (7 bits par
+ *     octet). Les horodatages du démodulateur étant des multiples de 100 ns, leurs écarts sont ainsi plus courts ;</li>
+ *     <li>viennent ensuite le nombre d'aéronefs du bloc, sous la même forme, et leurs adresses OACI dans l'ordre de
+ *     leur premier message, puis le numéro d'aéronef de chaque message sur deux octets, qui remplace son adresse ;</li>
+ *     <li>les autres octets des messages sont enfin stockés colonne par colonne : le premier octet de chaque message,
+ *     puis le cinquième, etc. Les six octets suivant le code de type sont combinés par ou exclusif avec ceux du
+ *     précédent message du bloc ayant le même aéronef, le même premier octet, le même code de type et, pour que les
+ *     positions paires et impaires ne soient pas mélangées, le même bit de parité CPR ; les valeurs qui ne changent
+ *     pas ou peu d'un message à l'autre d'un aéronef deviennent ainsi des octets nuls ou presque. Le bit de parité
+ *     n'est pas combiné, ce qui permet de retrouver ce message à la lecture. Lorsque le CRC de tous les messages du
+ *     bloc est valide, ce qui est le cas de tous ceux produits par le démodulateur, leurs trois derniers octets ne
+ *     sont pas stockés mais recalculés à la lecture, car ils sont à la fois redondants et incompressibles ;</li>
+ *     <li>le fichier se termine par un index donnant l'horodatage du premier message et la position de chaque bloc,
+ *     suivi de la position de l'index, du nombre total de messages, du nombre de blocs et du nombre magique.</li>
+ * </ul>
+ * Les messages doivent être écrits par ordre chronologique, ce qui permet de trouver un instant donné par recherche
+ * dichotomique dans l'index.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class CompactRecordingWriter implements Closeable {
+
+    /**
+     * Le nombre de messages par bloc par défaut
+     */
+    public static final int DEFAULT_BLOCK_MESSAGES = 4096;
+    static final int MAGIC = 0x4A565243;
+    // les octets "JVRC", au début et à la fin du fichier
+    static final int VERSION = 2;
+    static final int FILE_HEADER_SIZE = 2 * Integer.BYTES;
+    static final int BLOCK_HEADER_SIZE = Long.BYTES + 4 * Integer.BYTES;
+    static final int CRC_OMITTED = 1;
+    // l'option d'un bloc dont les messages sont stockés sans leur CRC
+    static final int CRC_LENGTH = 3;
+    static final int ICAO_START = 1;
+    static final int ICAO_LENGTH = 3;
+    static final int TYPE_CODE_INDEX = 4;
+    static final int AIRCRAFT_ID_LENGTH = 2;
+    static final int PARITY_INDEX = 6;
+    static final int PARITY_MASK = 0x04;
+    // le bit de parité CPR d'un message de position, qui n'est pas combiné avec le message précédent
+    static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES;
+    static final int TRAILER_SIZE = 2 * Long.BYTES + 2 * Integer.BYTES;
+    static final int VARINT_BITS = 7;
+    static final int VARINT_MASK = (1 << VARINT_BITS) - 1;
+    private static final int MAX_VARINT_SIZE = (Long.SIZE + VARINT_BITS - 1) / VARINT_BITS;
+    private static final int MAX_BLOCK_MESSAGES = 1 << (Byte.SIZE * AIRCRAFT_ID_LENGTH);
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+    private static final Crc24 CRC = new Crc24(Crc24.GENERATOR);
+
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final int blockMessages;
+    private final long[] timeStamps;
+    private final byte[] columns;
+    // les octets du bloc en cours, colonne par colonne : l'octet j du message i est à l'index j * blockMessages + i
+    private final byte[] raw;
+    private final byte[] bytes = new byte[RawMessage.LENGTH];
+    private final int[] aircraftIds;
+    private final int[] firstMessages;
+    // le numéro d'aéronef de chaque message du bloc, et l'index du premier message de chaque aéronef
+    private final LastOccurrences aircraft;
+    private final LastOccurrences references;
+    private byte[] compressed;
+    private long[] index = new long[2 * INITIAL_INDEX_CAPACITY];
+    // l'horodatage du premier message et la position de chaque bloc, l'un après l'autre
+    private int count;
+    private boolean crcValid = true;
+    // vrai si et seulement si le CRC de tous les messages du bloc en cours est valide
+    private int blockCount;
+    private long messageCount;
+    private long position;
+    private long lastTimeStampNs;
+
+
+    /**
+     * Le constructeur public crée (ou remplace) le fichier donné, et y écrit des blocs du nombre de messages par
+     * défaut, compressés au niveau par défaut.
+     *
+     * @param file le fichier.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public CompactRecordingWriter(Path file) throws IOException {
+        this(file, DEFAULT_BLOCK_MESSAGES, Deflater.DEFAULT_COMPRESSION);
+    }
+
+
+    /**
+     * Le constructeur public crée (ou remplace) le fichier donné, et y écrit des blocs du nombre de messages donné,
+     * compressés au niveau donné.
+     *
+     * @param file          le fichier.
+     * @param blockMessages le nombre de messages par bloc.
+     * @param level         le niveau de compression, de 0 à 9 (voir Deflater), ou Deflater.DEFAULT_COMPRESSION.
+     * @throws IllegalArgumentException si le nombre de messages par bloc n'est pas compris entre 1 et 65536, ou si
+     *                                  le niveau de compression n'est pas valide.
+     * @throws IOException              en cas d'erreur d'entrée/sortie.
+     */
+    public CompactRecordingWriter(Path file, int blockMessages, int level) throws IOException {
+        Preconditions.checkArgument(blockMessages > 0 && blockMessages <= MAX_BLOCK_MESSAGES);
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+                || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION));
+        this.blockMessages = blockMessages;
+        this.timeStamps = new long[blockMessages];
+        this.columns = new byte[blockMessages * RawMessage.LENGTH];
+        this.raw = new byte[blockMessages * (MAX_VARINT_SIZE + RawMessage.LENGTH + AIRCRAFT_ID_LENGTH)
+                + 2 * MAX_VARINT_SIZE];
+        this.aircraftIds = new int[blockMessages];
+        this.firstMessages = new int[blockMessages];
+        this.aircraft = new LastOccurrences(blockMessages);
+        this.references = new LastOccurrences(blockMessages);
+        this.compressed = new byte[raw.length];
+        this.deflater = new Deflater(level);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(header);
+    }
+
+
+    /**
+     * Ajoute un message à l'enregistrement.
+     *
+     * @param message le message.
+     * @throws IllegalArgumentException si le message est plus ancien que le précédent.
+     * @throws IOException              en cas d'erreur d'entrée/sortie.
+     */
+    public void write(RawMessage message) throws IOException {
+        Preconditions.checkArgument(message.timeStampNs() >= lastTimeStampNs);
+        lastTimeStampNs = message.timeStampNs();
+        timeStamps[count] = message.timeStampNs();
+        for (int j = 0; j < RawMessage.LENGTH; j++) {
+            bytes[j] = (byte) message.bytes().byteAt(j);
+            columns[j * blockMessages + count] = bytes[j];
+        }
+        crcValid &= CRC.crc(bytes) == 0;
+        if (++count == blockMessages) {
+            writeBlock();
+        }
+    }
+
+
+    /**
+     * Ajoute à l'enregistrement tous les messages de la source donnée, jusqu'à son épuisement.
+     *
+     * @param source la source des messages, par ordre chronologique.
+     * @return le nombre de messages écrits.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public long writeAll(RawMessageSource source) throws IOException {
+        long written = 0;
+        RawMessage message;
+        while ((message = source.nextMessage()) != null) {
+            write(message);
+            written++;
+        }
+        return written;
+    }
+
+
+    /**
+     * Écrit le dernier bloc et l'index, puis ferme le fichier.
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (count > 0) writeBlock();
+            long indexOffset = position;
+            ByteBuffer footer = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+            for (int i = 0; i < 2 * blockCount; i++) {
+                footer.putLong(index[i]);
+            }
+            footer.putLong(indexOffset).putLong(messageCount).putInt(blockCount).putInt(MAGIC).flip();
+            writeFully(footer);
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+
+    // Méthode qui compresse et écrit le bloc en cours, puis l'ajoute à l'index.
+    private void writeBlock() throws IOException {
+        long divisor = 0;
+        for (int i = 1; i < count; i++) {
+            divisor = gcd(divisor, timeStamps[i] - timeStamps[i - 1]);
+        }
+        divisor = Math.max(divisor, 1);
+        int length = putVarint(divisor, 0);
+        long previous = timeStamps[0];
+        for (int i = 0; i < count; i++) {
+            length = putVarint((timeStamps[i] - previous) / divisor, length);
+            previous = timeStamps[i];
+        }
+
+        aircraft.clear();
+        int aircraftCount = 0;
+        for (int i = 0; i < count; i++) {
+            int first = aircraft.replace(icao(i), i);
+            if (first < 0) {
+                firstMessages[aircraftCount] = i;
+                aircraftIds[i] = aircraftCount++;
+            } else {
+                aircraftIds[i] = aircraftIds[first];
+            }
+        }
+        length = putVarint(aircraftCount, length);
+        for (int j = ICAO_START; j < ICAO_START + ICAO_LENGTH; j++) {
+            for (int a = 0; a < aircraftCount; a++) {
+                raw[length++] = column(j, firstMessages[a]);
+            }
+        }
+        for (int k = 0; k < AIRCRAFT_ID_LENGTH; k++, length += count) {
+            for (int i = 0; i < count; i++) {
+                raw[length + i] = (byte) (aircraftIds[i] >>> (Byte.SIZE * k));
+            }
+        }
+
+        System.arraycopy(columns, 0, raw, length, count);
+        length += count;
+        System.arraycopy(columns, TYPE_CODE_INDEX * blockMessages, raw, length, count);
+        length += count;
+        references.clear();
+        int combined = RawMessage.LENGTH - CRC_LENGTH - TYPE_CODE_INDEX - 1;
+        for (int i = 0; i < count; i++) {
+            int reference = references.replace(referenceKey(aircraftIds[i], column(0, i), column(TYPE_CODE_INDEX, i),
+                    column(PARITY_INDEX, i)), i);
+            for (int k = 0, j = TYPE_CODE_INDEX + 1; k < combined; k++, j++) {
+                raw[length + k * count + i] = reference < 0
+                        ? column(j, i)
+                        : (byte) (column(j, i) ^ (column(j, reference) & combinedMask(j)));
+            }
+        }
+        length += combined * count;
+        if (!crcValid) {
+            for (int j = RawMessage.LENGTH - CRC_LENGTH; j < RawMessage.LENGTH; j++) {
+                System.arraycopy(columns, j * blockMessages, raw, length, count);
+                length += count;
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        if (2 * blockCount == index.length) {
+            index = Arrays.copyOf(index, 2 * index.length);
+        }
+        index[2 * blockCount] = timeStamps[0];
+        index[2 * blockCount + 1] = position;
+        blockCount++;
+
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE)
+                .putLong(timeStamps[0]).putInt(count).putInt(length).putInt(compressedLength)
+                .putInt(crcValid ? CRC_OMITTED : 0).flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(compressed, 0, compressedLength));
+        messageCount += count;
+        count = 0;
+        crcValid = true;
+    }
+
+
+    // Méthode qui retourne la clef identifiant, parmi les messages d'un bloc, ceux avec lesquels un message peut être
+    // combiné.
+    static long referenceKey(int aircraftId, byte first, byte typeCode, byte parity) {
+        return ((long) aircraftId << (2 * Byte.SIZE + 1)) | (Byte.toUnsignedInt(first) << (Byte.SIZE + 1))
+                | (Byte.toUnsignedInt(typeCode) << 1) | ((parity & PARITY_MASK) == 0 ? 0 : 1);
+    }
+
+
+    // Méthode qui retourne les bits de l'octet d'index donné qui sont combinés avec le message précédent.
+    static int combinedMask(int j) {
+        return j == PARITY_INDEX ? ~PARITY_MASK & 0xFF : 0xFF;
+    }
+
+
+    private byte column(int j, int i) {
+        return columns[j * blockMessages + i];
+    }
+
+
+    private int icao(int i) {
+        int icao = 0;
+        for (int j = ICAO_START; j < ICAO_START + ICAO_LENGTH; j++) {
+            icao = (icao << Byte.SIZE) | Byte.toUnsignedInt(column(j, i));
+        }
+        return icao;
+    }
+
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+
+    private int putVarint(long value, int length) {
+        while ((value & ~VARINT_MASK) != 0) {
+            raw[length++] = (byte) ((value & VARINT_MASK) | (1 << VARINT_BITS));
+            value >>>= VARINT_BITS;
+        }
+        raw[length++] = (byte) value;
+        return length;
+    }
+
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+}
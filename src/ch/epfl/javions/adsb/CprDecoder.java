@@ -2,6 +2,9 @@ package ch.epfl.javions.adsb;
 import ch.epfl.javions.GeoPos;
 import ch.epfl.javions.Preconditions;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import static ch.epfl.javions.Units.Angle.*;
 import static ch.epfl.javions.Units.convert;
 
@@ -15,6 +18,17 @@ public  class CprDecoder{
     private static final double ZPHI0 = 60d;
     private static final double ZPHI1 = 59d;
     private static final double BOUND= 0.5d;
+    private static final double QUARTER = 0.25d;
+
+    /**
+     * La valeur retournée par les méthodes de décodage empaquetées lorsque la position décodée n'est pas valide ;
+     * sa latitude (Integer.MIN_VALUE) n'est celle d'aucune position valide
+     */
+    public static final long NO_POSITION = GeoPos.pack(0, Integer.MIN_VALUE);
+    private static final int NO_ZONE = 1;
+    private static final int NORTH_ZONES = zonesFormula(0);
+    private static final double[] NORTH_LIMITS = zoneLimits(0, QUARTER);
+    private static final double[] SOUTH_LIMITS = zoneLimits(1 - QUARTER, Math.nextDown(1d));
 
     /**
      * Le constructeur par défaut de la classe CprDecoder
@@ -24,6 +38,59 @@ public  class CprDecoder{
 
 
 
+    // Méthode qui calcule le nombre de zones de longitude à la latitude donnée (en radians) au moyen de la formule
+    // trigonométrique ; elle ne sert qu'à construire les tables NORTH_LIMITS et SOUTH_LIMITS.
+    private static int zonesFormula(double phiRadian) {
+        double c = (1 - Math.cos(2d * Math.PI / ZPHI0)) / Math.pow(Math.cos(phiRadian), 2);
+        double a = Math.acos(1 - c);
+        return Double.isNaN(a) ? NO_ZONE : (int) Math.floor(2d * Math.PI / a);
+    }
+
+    // Méthode qui construit la table des latitudes (en tours, entre from et to) auxquelles le nombre de zones de
+    // longitude change. Chaque limite est la plus petite valeur de type double pour laquelle la formule donne un
+    // nombre de zones différent, elle est trouvée par dichotomie afin que la table reproduise exactement la formule.
+    private static double[] zoneLimits(double from, double to) {
+        int fromZones = zonesFormula(convert(from, TURN, RADIAN));
+        double[] limits = new double[Math.abs(zonesFormula(convert(to, TURN, RADIAN)) - fromZones)];
+        double lo = from;
+        for (int i = 0; i < limits.length; i++) {
+            double hi = to;
+            while (Math.nextUp(lo) < hi) {
+                double mid = (lo + hi) / 2;
+                if (Math.abs(zonesFormula(convert(mid, TURN, RADIAN)) - fromZones) > i) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            limits[i] = hi;
+        }
+        return limits;
+    }
+
+    // Méthode qui retourne le nombre de limites de la table donnée inférieures ou égales à la latitude donnée.
+    private static int passedLimits(double[] limits, double phiTurn) {
+        int index = Arrays.binarySearch(limits, phiTurn);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    // Méthode qui retourne le nombre de zones de longitude à la latitude donnée en tours, en cherchant par dichotomie
+    // dans les tables des limites au lieu d'évaluer la formule trigonométrique. Les latitudes comprises entre 1/4 et
+    // 3/4 de tour ne sont pas valides, le nombre de zones qui leur est attribué est donc sans importance.
+    private static int longitudeZones(double phiTurn) {
+        double phi = Math.abs(phiTurn);
+        if (phi <= QUARTER) {
+            return NORTH_ZONES - passedLimits(NORTH_LIMITS, phi);
+        }
+        if (phi >= 1 - QUARTER) {
+            return NO_ZONE + passedLimits(SOUTH_LIMITS, phi);
+        }
+        return NO_ZONE;
+    }
+
+
+
+
     /**
      * Cette méthode public représente un décodeur de position CPR
      * @param x0 longitude locale d'un message pair
@@ -36,6 +103,24 @@ public  class CprDecoder{
      * si la latitude de la position décodée n'est pas valide
      */
     public static GeoPos decodePosition(double x0, double y0, double x1, double y1, int mostRecent) {
+        return unpack(decodePackedPosition(x0, y0, x1, y1, mostRecent));
+    }
+
+
+    /**
+     * Cette méthode public est équivalente à decodePosition, mais retourne la position décodée sous une forme
+     * empaquetée dans une valeur de type long (longitude en t32 dans les 32 bits de poids fort, latitude en t32 dans
+     * les 32 bits de poids faible), ce qui évite d'allouer une instance de GeoPos par décodage
+     * @param x0 longitude locale d'un message pair
+     * @param y0 latitude locale d'un message pair
+     * @param x1 longitude locale d'un message impair
+     * @param y1 latitude locale d'un message impair
+     * @param mostRecent index (0 ou 1)
+     * @throws IllegalArgumentException si mostRecent diffère de 0 ou de 1
+     * @return la position empaquetée correspondant aux positions locales normalisées données ou NO_POSITION
+     * si la latitude de la position décodée n'est pas valide
+     */
+    public static long decodePackedPosition(double x0, double y0, double x1, double y1, int mostRecent) {
 
         Preconditions.checkArgument((mostRecent ==0 || mostRecent == 1));
 
@@ -60,24 +145,15 @@ public  class CprDecoder{
         }
         double phi0Turn =(zphi0 + phi0) / ZPHI0;
         double phi1Turn =(zphi1 + phi1) / ZPHI1;
-        double phi0Radian = convert((zphi0 + phi0)* 1 / ZPHI0 , TURN, RADIAN);
-        double phi1Radian = convert((zphi1 + phi1)*1 / ZPHI1,TURN, RADIAN);
-
-        phi1 = convert((zphi1 + phi1)*1 / ZPHI1 , TURN, RADIAN);
-        double c0= (1-Math.cos(2d * Math.PI / ZPHI0)) / Math.pow(((Math.cos(phi0Radian))), 2);
-        double c1= (1-Math.cos(2d * Math.PI / ZPHI0)) / Math.pow(((Math.cos(phi1))), 2);
-        double A0 = Math.acos(1 - c0);
-        double A1 = Math.acos(1 - c1);
-        double Zl0 = Math.floor(2d * Math.PI / A0);
-        double Zl00 = Math.floor(2d * Math.PI / A1);
+        double Zl0 = longitudeZones(phi0Turn);
+        double Zl00 = longitudeZones(phi1Turn);
         double Zl1 = Zl0 - 1;
 
-        if(Double.isNaN(A0)){
+        if(Zl0 == NO_ZONE){
             zl=1d;
-            Zl0=1d;
         } else{
             if(Zl00!=Zl0){
-                return null;
+                return NO_POSITION;
             }
             zl= Math.rint(lambda0*Zl1 -lambda1*Zl0);
         }
@@ -119,18 +195,89 @@ public  class CprDecoder{
 
 
         if ((!GeoPos.isValidLatitudeT32((int) phi0Turn))) {
-            return null;
+            return NO_POSITION;
         }
         if ((!GeoPos.isValidLatitudeT32((int)phi1Turn))) {
-            return null;
+            return NO_POSITION;
         }
 
         if (mostRecent == 0) {
-            return new GeoPos((int) lambda0Ret, (int) phi0Turn);
+            return GeoPos.pack((int) lambda0Ret, (int) phi0Turn);
         } else {
-            return new GeoPos((int) lambda1Ret, (int) phi1Turn);
+            return GeoPos.pack((int) lambda1Ret, (int) phi1Turn);
         }
 
     }
 
+
+    /**
+     * Cette méthode public représente un décodeur de position CPR local : elle décode la position d'un seul message
+     * à l'aide d'une position de référence, qui doit se trouver à moins d'une demi-zone de la position réelle
+     * (p. ex. la dernière position connue de l'aéronef ou celle du récepteur).
+     * @param x longitude locale du message
+     * @param y latitude locale du message
+     * @param parity la parité du message (0 ou 1)
+     * @param reference la position de référence
+     * @throws IllegalArgumentException si parity diffère de 0 ou de 1
+     * @throws NullPointerException si la position de référence est nulle
+     * @return la position géographique correspondant à la position locale normalisée donnée ou null
+     * si la latitude de la position décodée n'est pas valide
+     */
+    public static GeoPos decodeLocalPosition(double x, double y, int parity, GeoPos reference) {
+        Objects.requireNonNull(reference);
+        return unpack(decodeLocalPackedPosition(x, y, parity, reference.packed()));
+    }
+
+
+    /**
+     * Cette méthode public est équivalente à decodeLocalPosition, mais reçoit et retourne des positions empaquetées
+     * dans des valeurs de type long, comme decodePackedPosition
+     * @param x longitude locale du message
+     * @param y latitude locale du message
+     * @param parity la parité du message (0 ou 1)
+     * @param reference la position de référence empaquetée
+     * @throws IllegalArgumentException si parity diffère de 0 ou de 1, ou si la position de référence vaut
+     * NO_POSITION
+     * @return la position empaquetée correspondant à la position locale normalisée donnée ou NO_POSITION
+     * si la latitude de la position décodée n'est pas valide
+     */
+    public static long decodeLocalPackedPosition(double x, double y, int parity, long reference) {
+
+        Preconditions.checkArgument((parity == 0 || parity == 1) && reference != NO_POSITION);
+
+        double latitudeRef = convert(GeoPos.unpackLat(reference), T32, TURN);
+        double longitudeRef = convert(GeoPos.unpackLon(reference), T32, TURN);
+
+        double zphiWidth = 1 / (parity == 0 ? ZPHI0 : ZPHI1);
+        double zphiRef = latitudeRef / zphiWidth;
+        double zphi = Math.floor(zphiRef) + Math.floor(BOUND + zphiRef - Math.floor(zphiRef) - y);
+        double phiTurn = zphiWidth * (zphi + y);
+
+        double zl = Math.max(longitudeZones(phiTurn) - parity, NO_ZONE);
+        double zlWidth = 1 / zl;
+        double zlambdaRef = longitudeRef / zlWidth;
+        double zlambda = Math.floor(zlambdaRef) + Math.floor(BOUND + zlambdaRef - Math.floor(zlambdaRef) - x);
+        double lambdaTurn = zlWidth * (zlambda + x);
+
+        if (lambdaTurn >= BOUND) {
+            lambdaTurn -= 1;
+        } else if (lambdaTurn < -BOUND) {
+            lambdaTurn += 1;
+        }
+
+        phiTurn = Math.rint(convert(phiTurn, TURN, T32));
+        lambdaTurn = Math.rint(convert(lambdaTurn, TURN, T32));
+
+        if (!GeoPos.isValidLatitudeT32((int) phiTurn)) {
+            return NO_POSITION;
+        }
+        return GeoPos.pack((int) lambdaTurn, (int) phiTurn);
+    }
+
+
+    // Méthode qui retourne la position correspondant à la position empaquetée donnée, ou null si elle vaut NO_POSITION.
+    private static GeoPos unpack(long position) {
+        return (position == NO_POSITION) ? null : new GeoPos(GeoPos.unpackLon(position), GeoPos.unpackLat(position));
+    }
+
 }
\ No newline at end of file
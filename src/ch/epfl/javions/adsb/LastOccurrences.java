@@ -0,0 +1,66 @@
+package ch.epfl.javions.adsb;
+
+import java.util.Arrays;
+
+/**
+ * La classe LastOccurrences finale et visible dans le paquetage représente une table associant à des clefs de type
+ * long l'index de leur dernière occurrence dans un bloc de messages du format compact (voir CompactRecordingWriter).
+ * Elle est implémentée par adressage ouvert avec sondage linéaire, dans deux tableaux dimensionnés une fois pour toutes
+ * pour le nombre maximal de clefs d'un bloc, si bien qu'elle peut être vidée et réutilisée d'un bloc à l'autre sans
+ * allocation.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+final class LastOccurrences {
+
+    private static final int NONE = -1;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    private final long[] keys;
+    private final int[] indices;
+    // l'index de la dernière occurrence de la clef de chaque case, ou NONE si la case est vide
+    private final int shift;
+
+
+    /**
+     * Le constructeur retourne une table vide, pouvant contenir le nombre de clefs donné.
+     *
+     * @param maxKeys le nombre maximal de clefs.
+     */
+    LastOccurrences(int maxKeys) {
+        int capacity = Integer.highestOneBit(Math.max(1, maxKeys) * 2 - 1) * 2;
+        this.keys = new long[capacity];
+        this.indices = new int[capacity];
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        clear();
+    }
+
+
+    /**
+     * Vide la table.
+     */
+    void clear() {
+        Arrays.fill(indices, NONE);
+    }
+
+
+    /**
+     * Associe l'index donné à la clef donnée, et retourne l'index qui lui était associé auparavant.
+     *
+     * @param key   la clef.
+     * @param index l'index de la nouvelle occurrence de la clef, positif ou nul.
+     * @return l'index de l'occurrence précédente de la clef, ou -1 s'il n'y en a pas.
+     */
+    int replace(long key, int index) {
+        int mask = keys.length - 1;
+        int slot = ((int) (key ^ (key >>> Integer.SIZE)) * HASH_MULTIPLIER) >>> shift;
+        while (indices[slot] != NONE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int previous = indices[slot];
+        keys[slot] = key;
+        indices[slot] = index;
+        return previous;
+    }
+
+}
@@ -0,0 +1,230 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * La classe MergedMessageSource publique et finale représente une source de messages bruts fusionnant plusieurs
+ * enregistrements, au format brut ou compact, par exemple ceux de plusieurs récepteurs. Chaque entrée est soit un
+ * fichier, soit un répertoire dont les fichiers, pris dans l'ordre de leur nom, sont les parties successives de
+ * l'enregistrement d'un même récepteur, comme ceux écrits par RawMessageRecorder. Les fichiers d'un répertoire ne sont
+ * ouverts que l'un après l'autre, lorsque le précédent est épuisé.
+ * <p>
+ * Les messages sont fusionnés par ordre chronologique au moyen d'un tas binaire contenant, pour chaque entrée non
+ * épuisée, l'horodatage de son prochain message. À horodatages égaux, les messages sont donnés dans l'ordre des
+ * entrées. Chaque entrée est lue par le fil qui appelle nextMessage, au travers du tampon de son lecteur, si bien que
+ * la fusion ne démarre aucun fil d'exécution par entrée.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class MergedMessageSource implements RawMessageSource, Closeable {
+
+    private static final long FROM_START = Long.MIN_VALUE;
+
+    private final Input[] inputs;
+    private final long[] heapTimeStamps;
+    private final int[] heapInputs;
+    // le tas des prochains messages, ordonné par horodatage puis par index d'entrée
+    private int heapSize;
+    private boolean started;
+
+
+    /**
+     * Le constructeur public retourne une source fusionnant les enregistrements donnés depuis leur début. Aucun fichier
+     * n'est ouvert avant le premier appel à nextMessage.
+     *
+     * @param paths les fichiers ou répertoires des enregistrements, chacun par ordre chronologique.
+     * @throws IllegalArgumentException si la liste est vide.
+     */
+    public MergedMessageSource(List<Path> paths) {
+        this(paths, FROM_START);
+    }
+
+
+    /**
+     * Le constructeur public retourne une source fusionnant les messages des enregistrements donnés dont l'horodatage
+     * est supérieur ou égal à celui donné. Chaque fichier est lu à partir de cet instant (voir
+     * CompactRecordingReader.seek et RawMessageReader.seek). Aucun fichier n'est ouvert avant le premier appel à
+     * nextMessage.
+     *
+     * @param paths       les fichiers ou répertoires des enregistrements, chacun par ordre chronologique.
+     * @param timeStampNs l'horodatage à partir duquel les messages sont donnés, en nanosecondes.
+     * @throws IllegalArgumentException si la liste est vide.
+     */
+    public MergedMessageSource(List<Path> paths, long timeStampNs) {
+        Preconditions.checkArgument(!paths.isEmpty());
+        this.inputs = new Input[paths.size()];
+        this.heapTimeStamps = new long[paths.size()];
+        this.heapInputs = new int[paths.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new Input(paths.get(i), timeStampNs);
+        }
+    }
+
+
+    /**
+     * Retourne le prochain message, le plus ancien de ceux des enregistrements fusionnés, ou null s'ils sont tous
+     * épuisés.
+     *
+     * @return le prochain message brut, ou null à la fin des enregistrements.
+     * @throws IOException en cas d'erreur d'entrée/sortie lors de la lecture de l'un des enregistrements.
+     */
+    @Override
+    public RawMessage nextMessage() throws IOException {
+        if (!started) {
+            // le tas n'est rempli qu'ici, pour que le constructeur n'ouvre aucun fichier
+            for (int i = 0; i < inputs.length; i++) {
+                if (inputs[i].advance()) push(i);
+            }
+            started = true;
+        }
+        if (heapSize == 0) return null;
+
+        int i = heapInputs[0];
+        Input input = inputs[i];
+        RawMessage message = input.head;
+        if (input.advance()) {
+            heapTimeStamps[0] = input.head.timeStampNs();
+        } else {
+            heapSize--;
+            heapTimeStamps[0] = heapTimeStamps[heapSize];
+            heapInputs[0] = heapInputs[heapSize];
+        }
+        siftDown();
+        return message;
+    }
+
+
+    /**
+     * Ferme les fichiers encore ouverts des enregistrements.
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie lors de la fermeture de l'un des fichiers.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Input input : inputs) {
+            try {
+                input.closeFile();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+
+    private void push(int input) {
+        int child = heapSize++;
+        long timeStampNs = inputs[input].head.timeStampNs();
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!before(timeStampNs, input, parent)) break;
+            heapTimeStamps[child] = heapTimeStamps[parent];
+            heapInputs[child] = heapInputs[parent];
+            child = parent;
+        }
+        heapTimeStamps[child] = timeStampNs;
+        heapInputs[child] = input;
+    }
+
+
+    private void siftDown() {
+        if (heapSize == 0) return;
+        long timeStampNs = heapTimeStamps[0];
+        int input = heapInputs[0];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heapTimeStamps[child + 1], heapInputs[child + 1], child)) child++;
+            if (!before(heapTimeStamps[child], heapInputs[child], timeStampNs, input)) break;
+            heapTimeStamps[parent] = heapTimeStamps[child];
+            heapInputs[parent] = heapInputs[child];
+            parent = child;
+        }
+        heapTimeStamps[parent] = timeStampNs;
+        heapInputs[parent] = input;
+    }
+
+
+    private boolean before(long timeStampNs, int input, int slot) {
+        return before(timeStampNs, input, heapTimeStamps[slot], heapInputs[slot]);
+    }
+
+
+    private static boolean before(long timeStampNs1, int input1, long timeStampNs2, int input2) {
+        return timeStampNs1 < timeStampNs2 || (timeStampNs1 == timeStampNs2 && input1 < input2);
+    }
+
+
+    // une entrée fusionnée : ses fichiers, listés lors de la première lecture, le lecteur du fichier en cours, et son
+    // prochain message non encore fusionné, head.
+    private static final class Input {
+        private final Path path;
+        private final long fromTimeStampNs;
+        private List<Path> files;
+        private int nextFile;
+        private RawMessageSource source;
+        private Closeable file;
+        private RawMessage head;
+
+        private Input(Path path, long fromTimeStampNs) {
+            this.path = path;
+            this.fromTimeStampNs = fromTimeStampNs;
+        }
+
+        // Méthode qui passe au message suivant, en ouvrant au besoin le fichier suivant, et retourne faux si
+        // l'entrée est épuisée.
+        private boolean advance() throws IOException {
+            if (files == null) files = list(path);
+            while (true) {
+                if (source == null) {
+                    if (nextFile == files.size()) return false;
+                    open(files.get(nextFile++));
+                }
+                head = source.nextMessage();
+                if (head != null) return true;
+                closeFile();
+            }
+        }
+
+        private void open(Path f) throws IOException {
+            if (CompactRecordingReader.isCompact(f)) {
+                CompactRecordingReader reader = new CompactRecordingReader(f, 1);
+                source = reader;
+                file = reader;
+                if (fromTimeStampNs != FROM_START) reader.seek(fromTimeStampNs);
+            } else {
+                RawMessageReader reader = new RawMessageReader(f);
+                source = reader;
+                file = reader;
+                if (fromTimeStampNs != FROM_START) reader.seek(fromTimeStampNs);
+            }
+        }
+
+        private void closeFile() throws IOException {
+            if (file == null) return;
+            try {
+                file.close();
+            } finally {
+                file = null;
+                source = null;
+            }
+        }
+
+        private static List<Path> list(Path path) throws IOException {
+            if (!Files.isDirectory(path)) return List.of(path);
+            try (Stream<Path> entries = Files.list(path)) {
+                return entries.filter(Files::isRegularFile).sorted().toList();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Bits;
+import ch.epfl.javions.Preconditions;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * La classe RawMessageQueue publique et finale représente une file bornée de messages bruts, alimentée par un ou
+ * plusieurs producteurs (démodulateur, lecteur d'enregistrement) et vidée par un seul consommateur. Les messages sont
+ * stockés dans un tableau circulaire alloué une fois pour toutes, si bien que la mémoire occupée par la file reste
+ * bornée quel que soit le débit. Lorsque la file est pleine, le sort du nouveau message dépend de la politique choisie
+ * (voir OverflowPolicy), et les messages perdus sont comptés.
+ * <p>
+ * Une fois fermée, la file refuse les nouveaux messages et nextMessage retourne null dès qu'elle est vide, ce qui
+ * permet de l'utiliser comme source de messages bruts.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class RawMessageQueue implements RawMessageSource {
+
+    private static final int POSITION_MIN1 = 9;
+    private static final int POSITION_MAX1 = 18;
+    private static final int POSITION_MIN2 = 20;
+    private static final int POSITION_MAX2 = 22;
+    private static final int PARITY_START = 34;
+    private static final int PARITY_SIZE = 1;
+    private static final int TYPE_CODE_SHIFT = 1;
+    private static final int ICAO_SHIFT = 8;
+    private final RawMessage[] ring;
+    private final OverflowPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<Long, long[]> latestSequences;
+    private final long[] ringKeys;
+    // pour la politique LATEST_PER_ICAO, le numéro d'ordre du dernier message encore dans la file de chaque clef de
+    // remplacement (voir replacementKey), et la clef du message de chaque case du tableau circulaire, qui permet
+    // d'oublier une clef lorsque son dernier message quitte la file ; la table ne contient ainsi jamais plus
+    // d'entrées que la file de messages
+    private long headSequence;
+    private long tailSequence;
+    // les numéros d'ordre du plus ancien message de la file et du prochain message à y entrer
+    private long dropped;
+    private boolean closed;
+
+
+    /**
+     * Le constructeur public retourne une file vide de capacité donnée.
+     *
+     * @param capacity la capacité de la file.
+     * @param policy   la politique appliquée lorsqu'un message arrive dans une file pleine.
+     * @throws IllegalArgumentException si la capacité n'est pas strictement positive.
+     */
+    public RawMessageQueue(int capacity, OverflowPolicy policy) {
+        Preconditions.checkArgument(capacity > 0);
+        this.ring = new RawMessage[capacity];
+        this.policy = Objects.requireNonNull(policy);
+        boolean latestPerIcao = policy == OverflowPolicy.LATEST_PER_ICAO;
+        this.latestSequences = latestPerIcao ? new HashMap<>() : null;
+        this.ringKeys = latestPerIcao ? new long[capacity] : null;
+    }
+
+
+    /**
+     * Ajoute un message à la file en appliquant, si elle est pleine, la politique donnée au constructeur.
+     *
+     * @param message le message.
+     * @return vrai si et seulement si le message est entré dans la file.
+     * @throws InterruptedException si le fil est interrompu pendant qu'il attend une place (politique BLOCK).
+     */
+    public boolean put(RawMessage message) throws InterruptedException {
+        Objects.requireNonNull(message);
+        lock.lockInterruptibly();
+        try {
+            if (closed) return false;
+            if (tailSequence - headSequence == ring.length) {
+                switch (policy) {
+                    case BLOCK -> {
+                        while (tailSequence - headSequence == ring.length && !closed) notFull.await();
+                        if (closed) return false;
+                    }
+                    case DROP_NEWEST -> {
+                        dropped++;
+                        return false;
+                    }
+                    case DROP_OLDEST -> removeOldest();
+                    case LATEST_PER_ICAO -> {
+                        long[] latest = latestSequences.get(replacementKey(message));
+                        if (latest != null) {
+                            // le message remplace, à sa place dans la file, le précédent message de même nature du
+                            // même aéronef
+                            ring[index(latest[0])] = message;
+                            dropped++;
+                            return true;
+                        }
+                        removeOldest();
+                    }
+                }
+            }
+            if (latestSequences != null) {
+                long key = replacementKey(message);
+                long[] latest = latestSequences.get(key);
+                if (latest == null) latestSequences.put(key, new long[]{tailSequence});
+                else latest[0] = tailSequence;
+                ringKeys[index(tailSequence)] = key;
+            }
+            ring[index(tailSequence++)] = message;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retire de la file son plus ancien message, en attendant qu'il y en ait un.
+     *
+     * @return le plus ancien message de la file, ou null si elle est fermée et vide.
+     * @throws InterruptedException si le fil est interrompu pendant qu'il attend un message.
+     */
+    public RawMessage take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tailSequence == headSequence) {
+                if (closed) return null;
+                notEmpty.await();
+            }
+            RawMessage message = removeHead();
+            notFull.signal();
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retire de la file, sans attendre, au plus autant de messages que le tableau donné peut en contenir, et les y
+     * place du plus ancien au plus récent. Le consommateur amortit ainsi le coût du verrou sur tout un lot.
+     *
+     * @param messages le tableau dans lequel placer les messages.
+     * @return le nombre de messages retirés.
+     */
+    public int drainTo(RawMessage[] messages) {
+        lock.lock();
+        try {
+            int count = (int) Math.min(messages.length, tailSequence - headSequence);
+            for (int i = 0; i < count; i++) {
+                messages[i] = removeHead();
+            }
+            if (count > 0) notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retire de la file son plus ancien message, en attendant qu'il y en ait un.
+     *
+     * @return le plus ancien message de la file, ou null si elle est fermée et vide.
+     * @throws InterruptedIOException si le fil est interrompu pendant qu'il attend un message.
+     */
+    @Override
+    public RawMessage nextMessage() throws InterruptedIOException {
+        try {
+            return take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * Ferme la file : les messages qu'elle contient encore peuvent être retirés, mais les nouveaux sont refusés.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retourne le nombre de messages actuellement dans la file.
+     *
+     * @return le nombre de messages dans la file.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return (int) (tailSequence - headSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retourne la capacité de la file.
+     *
+     * @return la capacité de la file.
+     */
+    public int capacity() {
+        return ring.length;
+    }
+
+
+    /**
+     * Retourne le nombre de messages perdus depuis la création de la file, parce qu'ils ont été refusés, retirés pour
+     * faire de la place, ou remplacés par un message plus récent du même aéronef.
+     *
+     * @return le nombre de messages perdus.
+     */
+    public long droppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void removeOldest() {
+        removeHead();
+        dropped++;
+    }
+
+
+    // Méthode qui retire le plus ancien message de la file et, s'il était le dernier de sa clef de remplacement encore
+    // dans la file, oublie cette clef.
+    private RawMessage removeHead() {
+        int index = index(headSequence);
+        RawMessage message = ring[index];
+        ring[index] = null;
+        if (latestSequences != null) {
+            long[] latest = latestSequences.get(ringKeys[index]);
+            if (latest[0] == headSequence) latestSequences.remove(ringKeys[index]);
+        }
+        headSequence++;
+        return message;
+    }
+
+
+    // Méthode qui retourne la clef de remplacement du message donné, formée de l'adresse OACI de l'aéronef, du code de
+    // type du message et, pour une position en vol, de sa parité CPR : un message ne remplace ainsi que le précédent
+    // message portant la même information, et les deux messages pair et impair nécessaires au calcul d'une position
+    // restent tous deux dans la file.
+    private static long replacementKey(RawMessage message) {
+        int typeCode = message.typeCode();
+        boolean position = (typeCode >= POSITION_MIN1 && typeCode <= POSITION_MAX1)
+                || (typeCode >= POSITION_MIN2 && typeCode <= POSITION_MAX2);
+        int parity = position ? Bits.extractUInt(message.payload(), PARITY_START, PARITY_SIZE) : 0;
+        return ((long) message.icaoAddress().asInt() << ICAO_SHIFT) | ((long) typeCode << TYPE_CODE_SHIFT) | parity;
+    }
+
+
+    private int index(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+
+    /**
+     * L'énumération OverflowPolicy publique représente les politiques applicables lorsqu'un message arrive dans une
+     * file pleine.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Le producteur attend qu'une place se libère.
+         */
+        BLOCK,
+        /**
+         * Le plus ancien message de la file est perdu.
+         */
+        DROP_OLDEST,
+        /**
+         * Le nouveau message est perdu.
+         */
+        DROP_NEWEST,
+        /**
+         * Le nouveau message remplace le précédent message de même nature du même aéronef encore dans la file, ou à
+         * défaut le plus ancien message de la file. Deux messages sont de même nature s'ils ont la même adresse OACI,
+         * le même code de type et, pour les positions en vol, la même parité CPR : une identification ne remplace
+         * jamais une position ou une vitesse, et une position paire ne remplace pas une position impaire, dont le
+         * calcul de la position a besoin. La file ne garde ainsi que l'état le plus récent de chaque aéronef.
+         */
+        LATEST_PER_ICAO
+    }
+
+}
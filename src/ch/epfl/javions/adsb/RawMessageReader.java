@@ -0,0 +1,118 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * La classe RawMessageReader publique et finale représente un lecteur d'enregistrement de messages bruts, au format
+ * produit par DataOutputStream : pour chaque message, son horodatage (long) suivi de ses RawMessage.LENGTH octets.
+ * Les enregistrements sont lus un à un, au travers d'un tampon de taille fixe rempli par blocs depuis le canal du
+ * fichier, si bien que la lecture commence immédiatement et que la mémoire utilisée ne dépend pas de la taille de
+ * l'enregistrement. Un éventuel enregistrement incomplet à la fin du fichier est ignoré. Les enregistrements ayant
+ * tous la même taille, la lecture peut en outre reprendre à n'importe quel instant (voir seek).
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class RawMessageReader implements RawMessageSource, Closeable {
+
+    /**
+     * La taille d'un enregistrement, en octets
+     */
+    public static final int RECORD_SIZE = Long.BYTES + RawMessage.LENGTH;
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] bytes = new byte[RawMessage.LENGTH];
+    private boolean endOfFile;
+
+
+    /**
+     * Le constructeur public ouvre l'enregistrement stocké dans le fichier donné.
+     *
+     * @param file le fichier.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public RawMessageReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE);
+        buffer.flip();
+    }
+
+
+    /**
+     * Retourne le prochain message de l'enregistrement, ou null s'il n'y en a plus.
+     *
+     * @return le prochain message brut, ou null à la fin de l'enregistrement.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    @Override
+    public RawMessage nextMessage() throws IOException {
+        if (buffer.remaining() < RECORD_SIZE && !fill()) {
+            return null;
+        }
+        long timeStampNs = buffer.getLong();
+        buffer.get(bytes);
+        return new RawMessage(timeStampNs, new ByteString(bytes));
+    }
+
+
+    /**
+     * Reprend la lecture au premier message dont l'horodatage est supérieur ou égal à celui donné, trouvé par
+     * recherche dichotomique parmi les enregistrements du fichier, qui doivent être dans l'ordre chronologique.
+     *
+     * @param timeStampNs l'horodatage, en nanosecondes.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public void seek(long timeStampNs) throws IOException {
+        ByteBuffer timeStamp = ByteBuffer.allocate(Long.BYTES);
+        long low = 0;
+        long high = channel.size() / RECORD_SIZE;
+        // le premier enregistrement dont l'horodatage n'est pas antérieur à celui donné est entre low et high
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            timeStamp.clear();
+            while (timeStamp.hasRemaining()) {
+                if (channel.read(timeStamp, middle * RECORD_SIZE + timeStamp.position()) < 0) throw new EOFException();
+            }
+            if (timeStamp.getLong(0) < timeStampNs) low = middle + 1;
+            else high = middle;
+        }
+        channel.position(low * RECORD_SIZE);
+        buffer.clear().flip();
+        endOfFile = false;
+    }
+
+
+    /**
+     * Ferme le fichier de l'enregistrement.
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    // Méthode qui complète le tampon depuis le fichier, et retourne vrai si et seulement s'il contient ensuite au
+    // moins un enregistrement complet. Le canal étant celui d'un fichier, chaque lecture progresse tant que le fichier
+    // n'est pas terminé.
+    private boolean fill() throws IOException {
+        buffer.compact();
+        while (!endOfFile && buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) endOfFile = true;
+        }
+        buffer.flip();
+        return buffer.remaining() >= RECORD_SIZE;
+    }
+
+}
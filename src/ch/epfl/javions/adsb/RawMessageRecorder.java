@@ -0,0 +1,298 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe RawMessageRecorder publique et finale représente un enregistreur de messages bruts en direct, au format
+ * lu par RawMessageReader. Les messages lui sont confiés sans attente par le fil qui les produit, et écrits par son
+ * propre fil d'exécution, par lots, au travers d'un tampon direct ; si le disque ne suit pas, les messages qui ne
+ * trouvent pas de place dans sa file sont perdus et comptés, plutôt que de retarder le producteur.
+ * <p>
+ * L'enregistrement est découpé en fichiers successifs, nommés d'après la date et l'heure de leur création, dont la
+ * taille et la durée sont bornées. La fréquence à laquelle les données sont forcées sur le disque est choisie par la
+ * politique de synchronisation (voir SyncPolicy).
+ * <p>
+ * Une erreur d'écriture n'arrête pas l'enregistrement : elle est signalée sur la sortie d'erreur et conservée (voir
+ * lastFailure), le fichier en cours est abandonné et le lot de messages est écrit dans un nouveau fichier. Si cela
+ * échoue aussi, le lot est perdu et compté, et aucun nouveau fichier n'est tenté pendant une seconde.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class RawMessageRecorder implements Closeable {
+
+    private static final long DEFAULT_MAX_FILE_BYTES = 256L << 20;
+    private static final long DEFAULT_MAX_FILE_DURATION_NS = 3_600_000_000_000L;
+    private static final long SYNC_PERIOD_NS = 1_000_000_000L;
+    private static final long RETRY_DELAY_NS = 1_000_000_000L;
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int BATCH_RECORDS = 4096;
+    private static final String FILE_NAME_FORMAT = "javions-%s-%04d.bin";
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final long maxFileDurationNs;
+    private final SyncPolicy syncPolicy;
+    private final RawMessageQueue queue;
+    private final Thread writer;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    // les messages perdus à cause d'une erreur d'écriture, en plus de ceux refusés par la file pleine
+    private volatile IOException lastFailure;
+    private volatile IOException closeFailure;
+    private FileChannel channel;
+    private long fileBytes;
+    private long fileOpenedNs;
+    private long lastSyncNs;
+    private int fileCount;
+    private long retryNs;
+    // l'état du fichier en cours, utilisé seulement par le fil d'écriture, et l'instant avant lequel aucun nouveau
+    // fichier n'est tenté après deux échecs
+
+
+    /**
+     * Le constructeur public retourne un enregistreur écrivant dans le répertoire donné des fichiers d'au plus 256 Mio
+     * et d'une heure, synchronisés avec le disque à leur fermeture.
+     *
+     * @param directory le répertoire des fichiers, créé au besoin.
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    public RawMessageRecorder(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILE_DURATION_NS, SyncPolicy.ON_ROTATE);
+    }
+
+
+    /**
+     * Le constructeur public retourne un enregistreur écrivant dans le répertoire donné, et démarre son fil d'écriture.
+     *
+     * @param directory         le répertoire des fichiers, créé au besoin.
+     * @param maxFileBytes      la taille au-delà de laquelle un nouveau fichier est commencé, en octets.
+     * @param maxFileDurationNs la durée au-delà de laquelle un nouveau fichier est commencé, en nanosecondes.
+     * @param syncPolicy        la politique de synchronisation des fichiers avec le disque.
+     * @throws IllegalArgumentException si la taille ou la durée n'est pas strictement positive.
+     * @throws IOException              en cas d'erreur d'entrée/sortie.
+     */
+    public RawMessageRecorder(Path directory, long maxFileBytes, long maxFileDurationNs, SyncPolicy syncPolicy)
+            throws IOException {
+        Preconditions.checkArgument(maxFileBytes > 0 && maxFileDurationNs > 0);
+        this.directory = Files.createDirectories(directory);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileDurationNs = maxFileDurationNs;
+        this.syncPolicy = Objects.requireNonNull(syncPolicy);
+        this.queue = new RawMessageQueue(QUEUE_CAPACITY, RawMessageQueue.OverflowPolicy.DROP_NEWEST);
+        this.retryNs = System.nanoTime();
+        this.writer = new Thread(this::writeAll, "recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * Confie un message à l'enregistreur, sans attendre qu'il soit écrit.
+     *
+     * @param message le message.
+     * @return vrai si et seulement si le message sera écrit, faux s'il est perdu.
+     * @throws InterruptedException si le fil est interrompu.
+     */
+    public boolean record(RawMessage message) throws InterruptedException {
+        return queue.put(message);
+    }
+
+
+    /**
+     * Retourne le nombre de messages écrits depuis la création de l'enregistreur.
+     *
+     * @return le nombre de messages écrits.
+     */
+    public long recordedCount() {
+        return recorded.get();
+    }
+
+
+    /**
+     * Retourne le nombre de messages perdus depuis la création de l'enregistreur, parce que sa file était pleine ou
+     * qu'une erreur d'écriture s'est produite.
+     *
+     * @return le nombre de messages perdus.
+     */
+    public long droppedCount() {
+        return queue.droppedCount() + lost.get();
+    }
+
+
+    /**
+     * Retourne la dernière erreur d'écriture survenue depuis la création de l'enregistreur.
+     *
+     * @return la dernière erreur d'écriture, ou null s'il n'y en a pas eu.
+     */
+    public IOException lastFailure() {
+        return lastFailure;
+    }
+
+
+    /**
+     * Écrit les messages encore en attente, ferme le fichier en cours et arrête le fil d'écriture. Les erreurs
+     * d'écriture survenues auparavant ne sont pas levées à nouveau (voir lastFailure).
+     *
+     * @throws IOException en cas d'erreur lors de la fermeture du dernier fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        queue.close();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (closeFailure != null) throw closeFailure;
+    }
+
+
+    // Méthode exécutée par le fil d'écriture : elle attend un message, puis écrit d'un coup tous ceux en attente,
+    // jusqu'à la fermeture de la file.
+    private void writeAll() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH_RECORDS * RawMessageReader.RECORD_SIZE);
+        RawMessage[] batch = new RawMessage[BATCH_RECORDS - 1];
+        try {
+            RawMessage first;
+            while ((first = queue.take()) != null) {
+                int count = 1 + queue.drainTo(batch);
+                buffer.clear();
+                put(buffer, first);
+                for (int i = 0; i < count - 1; i++) {
+                    put(buffer, batch[i]);
+                    batch[i] = null;
+                }
+                buffer.flip();
+                if (writeBatch(buffer)) recorded.addAndGet(count);
+                else lost.addAndGet(count);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                closeFile();
+            } catch (IOException e) {
+                closeFailure = e;
+            }
+        }
+    }
+
+
+    // Méthode qui écrit le lot donné et retourne vrai si elle y parvient. Après une erreur, le fichier en cours est
+    // abandonné et le lot est écrit en entier dans un nouveau fichier ; après une seconde erreur, le lot est perdu.
+    private boolean writeBatch(ByteBuffer buffer) {
+        if (channel == null && System.nanoTime() - retryNs < 0) return false;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                write(buffer.rewind());
+                return true;
+            } catch (IOException e) {
+                lastFailure = e;
+                System.err.printf("Erreur d'écriture de l'enregistrement, abandon du fichier en cours : %s%n", e);
+                abandonFile();
+            }
+        }
+        retryNs = System.nanoTime() + RETRY_DELAY_NS;
+        return false;
+    }
+
+
+    private static void put(ByteBuffer buffer, RawMessage message) {
+        buffer.putLong(message.timeStampNs());
+        for (int j = 0; j < RawMessage.LENGTH; j++) {
+            buffer.put((byte) message.bytes().byteAt(j));
+        }
+    }
+
+
+    // Méthode qui écrit le tampon donné dans le fichier en cours, après en avoir commencé un nouveau si sa taille ou
+    // sa durée a atteint la limite, puis le synchronise avec le disque si la politique le demande.
+    private void write(ByteBuffer buffer) throws IOException {
+        long now = System.nanoTime();
+        if (channel == null || fileBytes >= maxFileBytes || now - fileOpenedNs >= maxFileDurationNs) {
+            closeFile();
+            String time = ZonedDateTime.now(ZoneOffset.UTC).format(FILE_TIME_FORMAT);
+            Path file = directory.resolve(String.format(FILE_NAME_FORMAT, time, fileCount++));
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            fileBytes = 0;
+            fileOpenedNs = now;
+            lastSyncNs = now;
+        }
+        long written = fileBytes;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        if (syncPolicy == SyncPolicy.EVERY_BATCH
+                || (syncPolicy == SyncPolicy.PERIODIC && now - lastSyncNs >= SYNC_PERIOD_NS)) {
+            channel.force(false);
+            lastSyncNs = now;
+        }
+        fileBytes = written;
+    }
+
+
+    // Méthode qui ferme le fichier en cours après une erreur d'écriture, en le tronquant si possible à la fin du
+    // dernier lot écrit complètement, pour qu'il ne se termine pas par un message incomplet.
+    private void abandonFile() {
+        if (channel == null) return;
+        try (FileChannel failed = channel) {
+            failed.truncate(fileBytes);
+        } catch (IOException e) {
+            // le fichier est déjà en erreur, et son canal est fermé quoi qu'il arrive
+        }
+        channel = null;
+    }
+
+
+    private void closeFile() throws IOException {
+        if (channel == null) return;
+        try {
+            if (syncPolicy != SyncPolicy.NEVER) channel.force(false);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+
+    /**
+     * L'énumération SyncPolicy publique représente les politiques de synchronisation des fichiers avec le disque, de
+     * la plus rapide à la plus sûre en cas de panne.
+     */
+    public enum SyncPolicy {
+        /**
+         * Les fichiers ne sont jamais synchronisés explicitement, le système d'exploitation s'en charge.
+         */
+        NEVER,
+        /**
+         * Chaque fichier est synchronisé lorsqu'il est fermé.
+         */
+        ON_ROTATE,
+        /**
+         * Le fichier en cours est synchronisé au plus une fois par seconde, et lorsqu'il est fermé.
+         */
+        PERIODIC,
+        /**
+         * Le fichier en cours est synchronisé après chaque lot de messages.
+         */
+        EVERY_BATCH
+    }
+
+}
@@ -0,0 +1,21 @@
+package ch.epfl.javions.adsb;
+
+import java.io.IOException;
+
+/**
+ * L'interface RawMessageSource publique a pour but d'être implémentée par toutes les classes fournissant des messages
+ * ADS-B bruts les uns après les autres, par ordre chronologique : démodulateur, lecteur d'enregistrement, etc.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public interface RawMessageSource {
+
+    /**
+     * Retourne le prochain message ADS-B brut de la source, ou null s'il n'y en a plus.
+     *
+     * @return le prochain message brut, ou null s'il n'y en a plus
+     * @throws IOException en cas d'erreur d'entrée/sortie.
+     */
+    RawMessage nextMessage() throws IOException;
+}
@@ -0,0 +1,122 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * La classe ReplayClock publique et finale représente l'horloge d'une relecture d'enregistrement : elle transmet les
+ * messages d'une source à une file au rythme de leur horodatage, multiplié par un facteur de vitesse, ou aussi vite
+ * que possible. Les échéances sont calculées par rapport à l'horloge monotone System.nanoTime et au premier message,
+ * et non cumulées message après message, si bien que les imprécisions de l'attente ne s'accumulent pas ; à chaque
+ * réveil, tous les messages arrivés à échéance sont transmis d'un coup.
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class ReplayClock {
+
+    /**
+     * Le facteur de vitesse correspondant à une relecture aussi rapide que possible
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+    private static final String MAX_SPEED_NAME = "max";
+
+    private final double speed;
+
+
+    /**
+     * Le constructeur public retourne une horloge de relecture au facteur de vitesse donné.
+     *
+     * @param speed le facteur de vitesse : 1 pour le temps réel, 4 pour une relecture quatre fois plus rapide, ou
+     *              MAX_SPEED pour une relecture sans attente.
+     * @throws IllegalArgumentException si le facteur n'est pas strictement positif.
+     */
+    public ReplayClock(double speed) {
+        Preconditions.checkArgument(speed > 0);
+        this.speed = speed;
+    }
+
+
+    /**
+     * Retourne l'horloge décrite par la chaîne donnée, qui est soit un facteur de vitesse (p. ex. "1", "4", "0.5"),
+     * soit "max" pour une relecture aussi rapide que possible.
+     *
+     * @param speed la description du facteur de vitesse.
+     * @return l'horloge correspondante.
+     * @throws IllegalArgumentException si la chaîne ne décrit pas un facteur strictement positif.
+     */
+    public static ReplayClock of(String speed) {
+        return new ReplayClock(speed.equalsIgnoreCase(MAX_SPEED_NAME) ? MAX_SPEED : Double.parseDouble(speed));
+    }
+
+
+    /**
+     * Retourne le facteur de vitesse de l'horloge.
+     *
+     * @return le facteur de vitesse, MAX_SPEED si la relecture est aussi rapide que possible.
+     */
+    public double speed() {
+        return speed;
+    }
+
+
+    /**
+     * Transmet tous les messages de la source donnée à la file donnée, chacun à son échéance.
+     *
+     * @param source la source des messages, par ordre chronologique.
+     * @param queue  la file à laquelle les transmettre.
+     * @return le nombre de messages transmis.
+     * @throws IOException          en cas d'erreur d'entrée/sortie.
+     * @throws InterruptedException si le fil est interrompu.
+     */
+    public long replay(RawMessageSource source, RawMessageQueue queue) throws IOException, InterruptedException {
+        return replay(source, queue, new LongAdder());
+    }
+
+
+    /**
+     * Transmet tous les messages de la source donnée à la file donnée, chacun à son échéance, en incrémentant le
+     * compteur donné à chaque message transmis, ce qui permet de suivre la relecture pendant qu'elle se déroule.
+     *
+     * @param source  la source des messages, par ordre chronologique.
+     * @param queue   la file à laquelle les transmettre.
+     * @param counter le compteur des messages transmis.
+     * @return le nombre de messages transmis.
+     * @throws IOException          en cas d'erreur d'entrée/sortie.
+     * @throws InterruptedException si le fil est interrompu.
+     */
+    public long replay(RawMessageSource source, RawMessageQueue queue, LongAdder counter)
+            throws IOException, InterruptedException {
+        long count = 0;
+        RawMessage message = source.nextMessage();
+        if (message == null) return 0;
+
+        long originNs = System.nanoTime();
+        long originTimeStampNs = message.timeStampNs();
+        while (message != null) {
+            if (speed != MAX_SPEED) {
+                long dueNs = originNs + (long) ((message.timeStampNs() - originTimeStampNs) / speed);
+                long waitNs;
+                while ((waitNs = dueNs - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, waitNs);
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            }
+            // tous les messages arrivés à échéance sont transmis sans relire l'horloge entre eux
+            long nowNs = System.nanoTime();
+            do {
+                queue.put(message);
+                counter.increment();
+                count++;
+                message = source.nextMessage();
+            } while (message != null
+                    && (speed == MAX_SPEED
+                    || originNs + (long) ((message.timeStampNs() - originTimeStampNs) / speed) <= nowNs));
+        }
+        return count;
+    }
+
+}
@@ -1,20 +1,28 @@
 package ch.epfl.javions.aircraft;
 
 import java.io.*;
-import java.net.URLDecoder;
-import java.util.Objects;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * La classe AircraftDatabase publique et finale représente la base de données mictronics des aéronefs.
+ * Le fichier zip est ouvert lors de la première consultation et le reste jusqu'à l'appel à close ; les données
+ * des aéronefs consultés récemment, ainsi que les adresses absentes de la base, sont gardées dans des caches LRU.
+ * Si le nom de fichier donné se termine par AircraftIndex.EXTENSION, la base est plutôt consultée au moyen de
+ * l'index binaire contenu dans ce fichier (voir AircraftIndex), et les caches ne sont pas utilisés ; l'index n'est
+ * ouvert qu'une fois, lors de la première consultation, et est ensuite consulté sans verrou par tous les fils.
+ * Enfin, la méthode preload retourne une base dont toutes les données sont chargées en mémoire au démarrage.
  *
  * @author Marwa Chiguer (325221)
  * @author Imane Oujja (344332)
  */
 
-public final class AircraftDatabase {
+public final class AircraftDatabase implements Closeable {
 
     private static final int BEGIN_INDEX = 4;
     private static final int ZERO = 0;
@@ -24,7 +32,25 @@ public final class AircraftDatabase {
     private static final int FOUR = 4;
     private static final int FIVE = 5;
     private static final int LIMIT = -2;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int CACHE_SIZE = 10_000;
+    private static final int NEGATIVE_CACHE_SIZE = 10_000;
+    private static final String CSV = ".csv";
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 24;
+    private static final int ALIGNMENT = 8;
     private final String fileName;
+    private final Map<IcaoAddress, AircraftData> cache;
+    private final Map<IcaoAddress, Boolean> negativeCache;
+    private final IcaoMap<AircraftData> preloaded;
+    private final LoadReport loadReport;
+    private ZipFile zipFile;
+    private volatile AircraftIndex index;
+    private long hits;
+    private long negativeHits;
+    private long misses;
 
 
     /**
@@ -34,12 +60,107 @@ public final class AircraftDatabase {
      * @return un objet représentant la base de données mictronics, stockée dans le fichier de nom donné
      */
     public AircraftDatabase(String fileName) {
+        this(fileName, null, null);
+    }
+
+
+    // Le constructeur privé, qui reçoit le cas échéant les données préchargées et le rapport de leur chargement.
+    private AircraftDatabase(String fileName, IcaoMap<AircraftData> preloaded, LoadReport loadReport) {
         this.fileName = Objects.requireNonNull(fileName);
+        this.cache = lruMap(CACHE_SIZE);
+        this.negativeCache = lruMap(NEGATIVE_CACHE_SIZE);
+        this.preloaded = preloaded;
+        this.loadReport = loadReport;
+    }
+
+
+    /**
+     * Cette méthode retourne une base de données dont toutes les données sont chargées en mémoire, ce qui fait de
+     * chaque consultation une simple lecture en mémoire. Les entrées du fichier zip sont lues en parallèle, une tâche
+     * par entrée, et les chaînes répétées (types, descriptions, modèles) ne sont stockées qu'une fois.
+     *
+     * @param fileName le nom du fichier zip de la base de données mictronics
+     * @return la base de données préchargée
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    public static AircraftDatabase preload(String fileName) throws IOException {
+        long start = System.nanoTime();
+        Map<String, AircraftTypeDesignator> typeDesignators = new ConcurrentHashMap<>();
+        Map<String, AircraftDescription> descriptions = new ConcurrentHashMap<>();
+        Map<String, String> models = new ConcurrentHashMap<>();
+
+        List<IcaoMap<AircraftData>> parts = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (ZipFile zip = new ZipFile(fileName)) {
+            List<Future<IcaoMap<AircraftData>>> futures = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                futures.add(executor.submit(() -> {
+                    IcaoMap<AircraftData> part = new IcaoMap<>();
+                    try (BufferedReader buffer = new BufferedReader(
+                            new InputStreamReader(zip.getInputStream(entry), UTF_8))) {
+                        String l;
+                        while ((l = buffer.readLine()) != null) {
+                            String[] columns = l.split(",", LIMIT);
+                            try {
+                                AircraftData data = new AircraftData(
+                                        new AircraftRegistration(columns[ONE]),
+                                        typeDesignators.computeIfAbsent(columns[TWO], AircraftTypeDesignator::new),
+                                        models.computeIfAbsent(columns[THREE], m -> m),
+                                        descriptions.computeIfAbsent(columns[FOUR], AircraftDescription::new),
+                                        WakeTurbulenceCategory.of(columns[FIVE]));
+                                part.put(new IcaoAddress(columns[ZERO]).asInt(), data);
+                            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                                // les lignes ne décrivant pas un aéronef valide sont ignorées
+                            }
+                        }
+                    }
+                    return part;
+                }));
+            }
+            for (Future<IcaoMap<AircraftData>> future : futures) {
+                parts.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        int size = 0;
+        for (IcaoMap<AircraftData> part : parts) {
+            size += part.size();
+        }
+        IcaoMap<AircraftData> preloaded = new IcaoMap<>(size);
+        for (IcaoMap<AircraftData> part : parts) {
+            part.forEach((data, key) -> preloaded.put(key, data));
+        }
+        parts.clear();
+
+        LoadReport report = new LoadReport(preloaded.size(), System.nanoTime() - start,
+                residentBytes(preloaded, typeDesignators.values(), descriptions.values(), models.values()));
+        return new AircraftDatabase(fileName, preloaded, report);
+    }
+
+
+    /**
+     * Cette méthode retourne le rapport de chargement d'une base de données préchargée
+     *
+     * @return le rapport de chargement, ou null si la base n'a pas été préchargée
+     */
+    public LoadReport loadReport() {
+        return loadReport;
     }
 
 
     /**
-     * Cette méthode lit les données de la base de données
+     * Cette méthode lit les données de la base de données, ou les retourne depuis le cache si l'adresse donnée a été
+     * consultée récemment
      *
      * @param address l'adresse OACI
      * @return les données de l'aéronef dont l'adresse OACI est celle donnée en argument.
@@ -47,37 +168,192 @@ public final class AircraftDatabase {
      */
     public AircraftData get(IcaoAddress address) throws IOException {
         Objects.requireNonNull(address);
-        String d = getClass().getResource("/aircraft.zip").getFile();
-        d = URLDecoder.decode(d, UTF_8);
-        try (ZipFile fichier = new ZipFile(d);
-             InputStream flotEntree = fichier.getInputStream(fichier.getEntry((address.string()).substring(BEGIN_INDEX) + ".csv"));
+        if (preloaded != null) {
+            return preloaded.get(address.asInt());
+        }
+        if (fileName.endsWith(AircraftIndex.EXTENSION)) {
+            return index().get(address);
+        }
+        return lookup(address);
+    }
+
+
+    // Méthode qui retourne l'index, en l'ouvrant lors du premier appel. Seule l'ouverture est faite sous verrou : les
+    // consultations de l'index projeté en mémoire, en lecture seule, peuvent se faire en parallèle.
+    private AircraftIndex index() throws IOException {
+        AircraftIndex i = index;
+        if (i == null) {
+            synchronized (this) {
+                i = index;
+                if (i == null) {
+                    i = AircraftIndex.open(Path.of(fileName));
+                    index = i;
+                }
+            }
+        }
+        return i;
+    }
+
+
+    // Méthode qui consulte le fichier zip, en passant par les caches.
+    private synchronized AircraftData lookup(IcaoAddress address) throws IOException {
+        AircraftData cached = cache.get(address);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        if (negativeCache.containsKey(address)) {
+            negativeHits++;
+            return null;
+        }
+        misses++;
+
+        AircraftData data = read(address);
+        if (data != null) {
+            cache.put(address, data);
+        } else {
+            negativeCache.put(address, Boolean.TRUE);
+        }
+        return data;
+    }
+
+
+    /**
+     * Cette méthode retourne les statistiques d'utilisation des caches
+     *
+     * @return le nombre de consultations servies par le cache, par le cache des adresses inconnues, et lues
+     * dans le fichier zip
+     */
+    public synchronized Statistics statistics() {
+        return new Statistics(hits, negativeHits, misses);
+    }
+
+
+    /**
+     * Cette méthode ferme le fichier zip de la base de données, qui sera rouvert si la base est consultée à nouveau
+     *
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+            zipFile = null;
+        }
+        index = null;
+    }
+
+
+    // Méthode qui lit les données de l'aéronef d'adresse donnée dans le fichier zip, ou retourne null s'il n'y figure
+    // pas. Seule la ligne correspondant à l'adresse est découpée en colonnes.
+    private AircraftData read(IcaoAddress address) throws IOException {
+        if (zipFile == null) {
+            zipFile = new ZipFile(fileName);
+        }
+        ZipEntry entry = zipFile.getEntry(address.string().substring(BEGIN_INDEX) + CSV);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream flotEntree = zipFile.getInputStream(entry);
              Reader reader = new InputStreamReader(flotEntree, UTF_8);
              BufferedReader buffer = new BufferedReader(reader)) {
-            String l = "";
+            String l;
             while ((l = buffer.readLine()) != null) {
-                String[] columns = l.split(",", LIMIT);
                 if (l.startsWith(address.string())) {
+                    String[] columns = l.split(",", LIMIT);
                     AircraftRegistration registration = new AircraftRegistration(columns[ONE]);
                     AircraftTypeDesignator typeDesignator = new AircraftTypeDesignator(columns[TWO]);
                     AircraftDescription description = new AircraftDescription(columns[FOUR]);
                     WakeTurbulenceCategory category = WakeTurbulenceCategory.of(columns[FIVE]);
-                    AircraftData data = new AircraftData(registration, typeDesignator, columns[THREE], description, category);
-                    return data;
-                } else if (columns[ZERO].compareTo(address.getString()) > 0) {
+                    return new AircraftData(registration, typeDesignator, columns[THREE], description, category);
+                } else if (l.compareTo(address.string()) > 0) {
+                    // les lignes sont triées par adresse
                     return null;
                 }
             }
             return null;
         }
+    }
+
+
+    // Méthode qui estime, d'après leur structure et en supposant des références compressées, la mémoire occupée par
+    // les données préchargées : les tableaux de la table, chaque aéronef avec son immatriculation, et une seule fois
+    // chacune des valeurs partagées entre aéronefs.
+    private static long residentBytes(IcaoMap<AircraftData> preloaded,
+                                      Collection<AircraftTypeDesignator> typeDesignators,
+                                      Collection<AircraftDescription> descriptions,
+                                      Collection<String> models) {
+        long[] bytes = {align(ARRAY_HEADER_BYTES + (long) preloaded.capacity() * Integer.BYTES)
+                + align(ARRAY_HEADER_BYTES + (long) preloaded.capacity() * REFERENCE_BYTES)};
+        long dataBytes = align(OBJECT_HEADER_BYTES + 5 * REFERENCE_BYTES)
+                + align(OBJECT_HEADER_BYTES + REFERENCE_BYTES);
+        preloaded.forEach((data, key) -> bytes[0] += dataBytes + stringBytes(data.registration().string()));
+        for (AircraftTypeDesignator typeDesignator : typeDesignators) {
+            bytes[0] += align(OBJECT_HEADER_BYTES + REFERENCE_BYTES) + stringBytes(typeDesignator.string());
+        }
+        for (AircraftDescription description : descriptions) {
+            bytes[0] += align(OBJECT_HEADER_BYTES + REFERENCE_BYTES) + stringBytes(description.string());
+        }
+        for (String model : models) {
+            bytes[0] += stringBytes(model);
+        }
+        return bytes[0];
+    }
+
 
+    // les chaînes des fichiers de la base ne contiennent que des caractères latins, stockés sur un octet chacun.
+    private static long stringBytes(String string) {
+        return STRING_BYTES + align(ARRAY_HEADER_BYTES + string.length());
     }
 
-}
 
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
 
 
+    // Méthode qui retourne une table associative qui oublie l'entrée utilisée le moins récemment au-delà de la taille
+    // donnée.
+    private static <V> Map<IcaoAddress, V> lruMap(int maxSize) {
+        return new LinkedHashMap<>(maxSize, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IcaoAddress, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
 
 
+    /**
+     * L'enregistrement Statistics collecte les statistiques d'utilisation des caches de la base de données.
+     *
+     * @param hits         le nombre de consultations servies par le cache des données
+     * @param negativeHits le nombre de consultations servies par le cache des adresses inconnues
+     * @param misses       le nombre de consultations ayant nécessité la lecture du fichier zip
+     */
+    public record Statistics(long hits, long negativeHits, long misses) {
+
+        /**
+         * Cette méthode retourne la proportion des consultations servies par l'un des caches
+         *
+         * @return la proportion des consultations servies par l'un des caches, entre 0 et 1
+         */
+        public double hitRate() {
+            long total = hits + negativeHits + misses;
+            return total == 0 ? 0 : (double) (hits + negativeHits) / total;
+        }
+    }
 
 
+    /**
+     * L'enregistrement LoadReport décrit le chargement d'une base de données préchargée.
+     *
+     * @param size          le nombre d'aéronefs chargés
+     * @param loadTimeNs    la durée du chargement, en nanosecondes
+     * @param residentBytes une estimation de la mémoire occupée par les données chargées, calculée d'après leur
+     *                      structure, en octets
+     */
+    public record LoadReport(int size, long loadTimeNs, long residentBytes) {
+    }
 
+}
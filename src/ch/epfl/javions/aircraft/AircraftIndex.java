@@ -0,0 +1,230 @@
+package ch.epfl.javions.aircraft;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * La classe AircraftIndex publique et finale représente un index binaire de la base de données mictronics, projeté
+ * en mémoire. Le fichier contient un en-tête, la table triée des adresses OACI (sous forme d'entiers de 24 bits),
+ * un enregistrement de taille fixe par adresse, et enfin une réserve de chaînes dédoublonnées à laquelle les
+ * enregistrements font référence. Une consultation se résume donc à une recherche dichotomique, sans analyse de texte.
+ * <p>
+ * L'index se construit une fois pour toutes à partir du fichier zip, au moyen de la méthode build ou de la méthode
+ * main : {@code java ch.epfl.javions.aircraft.AircraftIndex aircraft.zip aircraft.idx}
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class AircraftIndex {
+
+    /**
+     * L'extension des fichiers d'index
+     */
+    public static final String EXTENSION = ".idx";
+    private static final int MAGIC = 0x4A564149;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int RECORD_SIZE = 5 * Integer.BYTES;
+    private static final int REGISTRATION = 0;
+    private static final int TYPE_DESIGNATOR = 1;
+    private static final int MODEL = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int CATEGORY = 4;
+    private static final int COLUMNS = 6;
+    private static final int LIMIT = -2;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int recordsOffset;
+    private final int poolOffset;
+
+
+    // Le constructeur privé, qui reçoit le contenu projeté en mémoire du fichier d'index.
+    private AircraftIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Not an aircraft index");
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(2 * Integer.BYTES);
+        this.recordsOffset = HEADER_SIZE + count * Integer.BYTES;
+        this.poolOffset = recordsOffset + count * RECORD_SIZE;
+    }
+
+
+    /**
+     * Cette méthode ouvre l'index stocké dans le fichier donné et le projette en mémoire
+     *
+     * @param indexFile le fichier d'index
+     * @return l'index
+     * @throws IOException en cas d'erreur d'entrée/sortie, ou si le fichier n'est pas un index
+     */
+    public static AircraftIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            return new AircraftIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+
+    /**
+     * Cette méthode retourne le nombre d'aéronefs contenus dans l'index
+     *
+     * @return le nombre d'aéronefs
+     */
+    public int size() {
+        return count;
+    }
+
+
+    /**
+     * Cette méthode recherche les données d'un aéronef dans l'index
+     *
+     * @param address l'adresse OACI
+     * @return les données de l'aéronef dont l'adresse OACI est celle donnée en argument, ou null si elle ne figure
+     * pas dans l'index
+     */
+    public AircraftData get(IcaoAddress address) {
+        int key = address.asInt();
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midKey = buffer.getInt(HEADER_SIZE + mid * Integer.BYTES);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return record(mid);
+            }
+        }
+        return null;
+    }
+
+
+    // Méthode qui décode l'enregistrement d'index donné.
+    private AircraftData record(int index) {
+        int offset = recordsOffset + index * RECORD_SIZE;
+        return new AircraftData(
+                new AircraftRegistration(string(buffer.getInt(offset + REGISTRATION * Integer.BYTES))),
+                new AircraftTypeDesignator(string(buffer.getInt(offset + TYPE_DESIGNATOR * Integer.BYTES))),
+                string(buffer.getInt(offset + MODEL * Integer.BYTES)),
+                new AircraftDescription(string(buffer.getInt(offset + DESCRIPTION * Integer.BYTES))),
+                WakeTurbulenceCategory.values()[buffer.getInt(offset + CATEGORY * Integer.BYTES)]);
+    }
+
+
+    // Méthode qui lit la chaîne située à la position donnée de la réserve de chaînes.
+    private String string(int poolIndex) {
+        int position = poolOffset + poolIndex;
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+
+    /**
+     * Cette méthode construit l'index de la base de données stockée dans le fichier zip donné. Les lignes qui ne
+     * décrivent pas un aéronef valide sont ignorées.
+     *
+     * @param zipFileName le nom du fichier zip de la base de données mictronics
+     * @param indexFile   le fichier d'index à (re)construire
+     * @return le nombre d'aéronefs contenus dans l'index
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    public static int build(String zipFileName, Path indexFile) throws IOException {
+        SortedMap<Integer, String[]> rows = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(zipFileName)) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(zipFile.getInputStream(entry), UTF_8))) {
+                    String l;
+                    while ((l = reader.readLine()) != null) {
+                        String[] columns = l.split(",", LIMIT);
+                        if (columns.length == COLUMNS && isValid(columns)) {
+                            rows.put(new IcaoAddress(columns[0]).asInt(), columns);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<String, Integer> poolIndices = new HashMap<>();
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        DataOutputStream poolOut = new DataOutputStream(pool);
+        Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows.size());
+            for (int key : rows.keySet()) {
+                out.writeInt(key);
+            }
+            for (String[] columns : rows.values()) {
+                for (int column = 1; column < COLUMNS - 1; column++) {
+                    String s = columns[column];
+                    Integer poolIndex = poolIndices.get(s);
+                    if (poolIndex == null) {
+                        poolIndex = poolOut.size();
+                        poolIndices.put(s, poolIndex);
+                        byte[] bytes = s.getBytes(UTF_8);
+                        poolOut.writeShort(bytes.length);
+                        poolOut.write(bytes);
+                    }
+                    out.writeInt(poolIndex);
+                }
+                out.writeInt(WakeTurbulenceCategory.of(columns[COLUMNS - 1]).ordinal());
+            }
+            pool.writeTo(out);
+        }
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        return rows.size();
+    }
+
+
+    // Méthode qui vérifie que les colonnes données décrivent un aéronef valide.
+    private static boolean isValid(String[] columns) {
+        try {
+            new IcaoAddress(columns[0]);
+            new AircraftRegistration(columns[1]);
+            new AircraftTypeDesignator(columns[2]);
+            new AircraftDescription(columns[4]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (int column = 1; column < COLUMNS - 1; column++) {
+            if (columns[column].getBytes(UTF_8).length > MAX_STRING_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Le programme principal construit l'index de la base de données.
+     *
+     * @param args le nom du fichier zip de la base de données et celui du fichier d'index à construire
+     * @throws IOException en cas d'erreur d'entrée/sortie
+     */
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkArgument(args.length == 2);
+        long start = System.nanoTime();
+        int count = build(args[0], Path.of(args[1]));
+        System.out.printf("%d aéronefs indexés dans %s en %d ms%n",
+                count, args[1], (System.nanoTime() - start) / 1_000_000);
+    }
+
+}
@@ -14,6 +14,7 @@ import java.util.regex.Pattern;
 
 public record IcaoAddress(String string) {
     private static final Pattern expReg1 = Pattern.compile("[0-9A-F]{6}");
+    private static final int RADIX = 16;
 
     /**
      * Le constructeur compact de cet enregistrement valide la chaîne qui lui est passée
@@ -30,4 +31,13 @@ public record IcaoAddress(String string) {
         return string;
     }
 
+    /**
+     * Cette méthode retourne l'adresse sous la forme d'un entier de 24 bits
+     *
+     * @return la valeur de l'adresse, interprétée comme un nombre hexadécimal
+     */
+    public int asInt() {
+        return Integer.parseInt(string, RADIX);
+    }
+
 }
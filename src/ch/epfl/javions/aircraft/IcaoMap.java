@@ -0,0 +1,194 @@
+package ch.epfl.javions.aircraft;
+
+import ch.epfl.javions.Preconditions;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * La classe IcaoMap publique et finale représente une table associative dont les clefs sont des adresses OACI sous
+ * la forme d'entiers de 24 bits (voir IcaoAddress.asInt). Elle est implémentée par adressage ouvert avec sondage
+ * linéaire, dans deux tableaux, ce qui évite d'allouer un objet par entrée et de hacher des chaînes. La suppression
+ * déplace vers l'arrière les entrées qui suivent la case libérée, si bien que la table ne contient jamais de marqueurs
+ * d'entrées supprimées et que les recherches ne se dégradent pas au fil des insertions et suppressions.
+ *
+ * @param <V> le type des valeurs
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class IcaoMap<V> {
+
+    private static final int EMPTY = -1;
+    private static final int MAX_KEY = (1 << 24) - 1;
+    private static final int MIN_CAPACITY = 16;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int shift;
+
+
+    /**
+     * Le constructeur public retourne une table vide, dimensionnée pour contenir le nombre d'entrées donné sans
+     * devoir être agrandie
+     *
+     * @param expectedSize le nombre d'entrées attendu
+     */
+    public IcaoMap(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0);
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2));
+    }
+
+
+    /**
+     * Le constructeur public par défaut retourne une table vide
+     */
+    public IcaoMap() {
+        this(0);
+    }
+
+
+    /**
+     * Cette méthode retourne le nombre d'entrées de la table
+     *
+     * @return le nombre d'entrées
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Cette méthode retourne le nombre d'emplacements des tableaux de la table
+     *
+     * @return la capacité de la table
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+
+    /**
+     * Cette méthode retourne la valeur associée à la clef donnée
+     *
+     * @param key l'adresse OACI sous la forme d'un entier de 24 bits
+     * @return la valeur associée à la clef, ou null s'il n'y en a pas
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = slot(key);
+        return keys[slot] == EMPTY ? null : (V) values[slot];
+    }
+
+
+    /**
+     * Cette méthode associe la valeur donnée à la clef donnée
+     *
+     * @param key   l'adresse OACI sous la forme d'un entier de 24 bits
+     * @param value la valeur
+     * @return la valeur précédemment associée à la clef, ou null s'il n'y en avait pas
+     * @throws IllegalArgumentException si la clef n'est pas un entier de 24 bits
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        Preconditions.checkArgument(key >= 0 && key <= MAX_KEY);
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+
+    /**
+     * Cette méthode supprime l'entrée associée à la clef donnée
+     *
+     * @param key l'adresse OACI sous la forme d'un entier de 24 bits
+     * @return la valeur qui était associée à la clef, ou null s'il n'y en avait pas
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int hole = slot(key);
+        if (keys[hole] == EMPTY) {
+            return null;
+        }
+        V previous = (V) values[hole];
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            // l'entrée peut combler le trou si celui-ci se trouve entre sa case d'origine et sa case actuelle
+            if (((i - home(keys[i])) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+        size--;
+        return previous;
+    }
+
+
+    /**
+     * Cette méthode applique l'action donnée à chacune des entrées de la table, dans un ordre quelconque
+     *
+     * @param action l'action, qui reçoit la valeur et la clef de chaque entrée
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept((V) values[i], keys[i]);
+            }
+        }
+    }
+
+
+    // Méthode qui retourne l'index de la case contenant la clef donnée, ou de la case vide où elle devrait être placée.
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    // Méthode qui retourne la case d'origine de la clef donnée, celle où la recherche commence.
+    private int home(int key) {
+        return (key * HASH_MULTIPLIER) >>> shift;
+    }
+
+
+    // Méthode qui agrandit les tableaux à la capacité donnée et y replace toutes les entrées.
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+    // Méthode qui alloue des tableaux vides de la capacité donnée, qui doit être une puissance de deux.
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+}
@@ -1,9 +1,11 @@
 package ch.epfl.javions.demodulation;
 
 import ch.epfl.javions.adsb.RawMessage;
+import ch.epfl.javions.adsb.RawMessageSource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * La classe AdsbDemodulator publique et finale représente un démodulateur de messaes ADSB.
@@ -11,7 +13,7 @@ import java.io.InputStream;
  * @author Marwa Chiguer (325221)
  * @author Imane Oujja (344332)
  */
-public final class AdsbDemodulator {
+public final class AdsbDemodulator implements RawMessageSource {
 
     private static final int WINDOW_SIZE = 1200;
     private static final int BYTE_SIZE = 8;
@@ -21,6 +23,9 @@ public final class AdsbDemodulator {
 
     private final PowerWindow powerWindow;
     private final byte[] msg = new byte[MSG_LENGTH];
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    // les nombres de messages candidats dont le CRC est correct, et incorrect ; ils peuvent être lus par d'autres fils
 
 
     /**
@@ -40,6 +45,7 @@ public final class AdsbDemodulator {
      * @return le prochain message ADS-B du flot d'échantillons passé au constructeur
      * @throws IOException en cas d'erreur d'entrée/sortie.
      */
+    @Override
     public RawMessage nextMessage() throws IOException {
         RawMessage mess = null;
         while (powerWindow.isFull()) {
@@ -65,12 +71,36 @@ public final class AdsbDemodulator {
                 msg[i] = b;
             }
             long time = (powerWindow.position() * 100);
-            if (RawMessage.of(time, msg) != null) {
+            RawMessage message = RawMessage.of(time, msg);
+            if (message != null) {
+                accepted.increment();
                 powerWindow.advanceBy(WINDOW_SIZE);
-                return RawMessage.of(time, msg);
+                return message;
             }
+            rejected.increment();
         }
         return null;
     }
-}
 
+
+    /**
+     * Retourne le nombre de messages démodulés dont le CRC est correct, depuis la création du démodulateur.
+     * Cette méthode peut être appelée depuis n'importe quel fil d'exécution.
+     *
+     * @return le nombre de messages acceptés.
+     */
+    public long acceptedCount() {
+        return accepted.sum();
+    }
+
+
+    /**
+     * Retourne le nombre de messages candidats rejetés car leur CRC est incorrect, depuis la création du démodulateur.
+     * Cette méthode peut être appelée depuis n'importe quel fil d'exécution.
+     *
+     * @return le nombre de messages rejetés.
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -7,6 +7,7 @@ import ch.epfl.javions.aircraft.AircraftTypeDesignator;
 import ch.epfl.javions.aircraft.WakeTurbulenceCategory;
 import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
+import javafx.beans.binding.ObjectBinding;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.ObservableSet;
@@ -24,7 +25,6 @@ import javafx.scene.text.Text;
 import java.util.Iterator;
 import java.util.List;
 
-import static ch.epfl.javions.WebMercator.y;
 import static javafx.scene.paint.CycleMethod.NO_CYCLE;
 
 public final class AircraftController {
@@ -40,6 +40,7 @@ public final class AircraftController {
     private final Pane aircraftPane;
     private final MapParameters mapParameters;
     private final ObjectProperty<ObservableAircraftState> stateObjectProperty;
+    private final ProjectionCache projectionCache;
 
     /**
      * Construction of an AircraftController object.
@@ -54,8 +55,12 @@ public final class AircraftController {
         this.aircraftStates = states;
         this.stateObjectProperty = aircraftState;
         this.aircraftPane = new Pane();
+        this.projectionCache = new ProjectionCache(parameters);
         aircraftPane.setPickOnBounds(false);
         this.aircraftPane.getStylesheets().add("aircraft.css");
+        aircraftPane.sceneProperty().addListener((p, oldS, newS) -> {
+            if (newS != null) newS.addPreLayoutPulseListener(projectionCache::relayoutIfNeeded);
+        });
         addedAircraft();
     }
 
@@ -80,15 +85,19 @@ public final class AircraftController {
             // add the annotated aircraft
             if (change.wasAdded()) {
                 ObservableAircraftState state = change.getElementAdded();
-                Group annotatedAircraft = new Group(iconLabel(state));
+                // the icon and label groups are placed together by the projection cache
+                Group positionedGroup = new Group(iconLabel(state), labelAndIconGroup(state));
+                Group annotatedAircraft = new Group(trajectory(state), positionedGroup);
                 annotatedAircraft.setId(state.getIcaoAddress().string());
-                annotatedAircraft.getChildren().addAll(trajectory(state),labelAndIconGroup(state));
                 annotatedAircraft.viewOrderProperty().bind(state.altitudeProperty().negate());
                 aircraftPane.getChildren().add(annotatedAircraft);
+                projectionCache.add(state, positionedGroup);
+                state.positionProperty().addListener(o -> projectionCache.update(state));
             }
             //removes the aircraft
             if (change.wasRemoved()) {
                 ObservableAircraftState state = change.getElementRemoved();
+                projectionCache.remove(state);
                 aircraftPane.getChildren().removeIf(
                         aircraft -> aircraft.getId().equals(state.getIcaoAddress().string()));
             }
@@ -104,16 +113,6 @@ public final class AircraftController {
     private Group labelAndIconGroup(ObservableAircraftState aircraftState) {
         Group labelAndIconGroup = new Group();
         labelAndIconGroup.getChildren().addAll(label(aircraftState), icon(aircraftState));
-        labelAndIconGroup.layoutXProperty().bind(Bindings.createDoubleBinding(() -> {
-            double longitude = aircraftState.getPosition().longitude();
-            double longitudeInPixel = WebMercator.x(mapParameters.getZoom(), longitude);
-            return longitudeInPixel - mapParameters.getMinX();
-        },mapParameters.minX(), mapParameters.zoom(), aircraftState.positionProperty()));
-        labelAndIconGroup.layoutYProperty().bind(Bindings.createDoubleBinding(() -> {
-            double latitude = aircraftState.getPosition().latitude();
-            double latitudeInPixel = y(mapParameters.getZoom(), latitude);
-            return latitudeInPixel - mapParameters.getMinY();
-        },mapParameters.zoom(), mapParameters.minY(), aircraftState.positionProperty()));
         return labelAndIconGroup;
     }
 
@@ -128,23 +127,17 @@ public final class AircraftController {
         SVGPath svgPath = new SVGPath();
         svgPath.getStyleClass().add("aircraft");
 
-        AircraftIcon aircraftIcon;
-        if (state.getData() != null)
-            aircraftIcon = AircraftIcon.iconFor(state.getData().typeDesignator(),
-                    state.getData().description(),
-                    state.getCategory(), state.getData().wakeTurbulenceCategory());
-        else
-            aircraftIcon = AircraftIcon.iconFor(new AircraftTypeDesignator(""),
-                    new AircraftDescription(""), state.getCategory(), WakeTurbulenceCategory.of(""));
-
+        // the icon depends on the aircraft data, which may be fetched after the aircraft appears
+        ObjectBinding<AircraftIcon> aircraftIcon = Bindings.createObjectBinding(() -> iconFor(state),
+                state.dataProperty(), state.categoryProperty());
 
-        svgPath.contentProperty().bind(new SimpleStringProperty(aircraftIcon.svgPath()));
+        svgPath.contentProperty().bind(aircraftIcon.map(AircraftIcon::svgPath));
 
         svgPath.rotateProperty().bind(Bindings.createDoubleBinding(() ->
-                        aircraftIcon.canRotate()
+                        aircraftIcon.get().canRotate()
                                 ? Units.convertTo(state.getTrackOrHeading(), Units.Angle.DEGREE)
                                 : 0d,
-                state.trackOrHeadingProperty())
+                state.trackOrHeadingProperty(), aircraftIcon)
         );
         double stateAltitude=state.getAltitude();
 
@@ -157,6 +150,16 @@ public final class AircraftController {
         return svgPath;
     }
 
+    private AircraftIcon iconFor(ObservableAircraftState state) {
+        if (state.getData() != null)
+            return AircraftIcon.iconFor(state.getData().typeDesignator(),
+                    state.getData().description(),
+                    state.getCategory(), state.getData().wakeTurbulenceCategory());
+        else
+            return AircraftIcon.iconFor(new AircraftTypeDesignator(""),
+                    new AircraftDescription(""), state.getCategory(), WakeTurbulenceCategory.of(""));
+    }
+
     private Group label(ObservableAircraftState stateData) {
         Rectangle rectangle = new Rectangle();
         Text text = new Text();
@@ -169,7 +172,8 @@ public final class AircraftController {
                                 Units.convertTo(stateData.getVelocity(),Units.Speed.KILOMETER_PER_HOUR)) : "?") + "\u2002Km/h "+
                         (stateData.altitudeProperty() != null ? String.format("%.0f",
                                 stateData.getAltitude()): "?") + "\u2002m",
-                stateData.altitudeProperty(), stateData.velocityProperty(), stateData.callSignProperty()));
+                stateData.altitudeProperty(), stateData.velocityProperty(), stateData.callSignProperty(),
+                stateData.dataProperty()));
 
         rectangle.widthProperty().bind(text.layoutBoundsProperty().map(bounds -> bounds.getWidth() + RECTANGLE_FACTOR));
         rectangle.heightProperty().bind(text.layoutBoundsProperty().map(bounds->bounds.getHeight() + RECTANGLE_FACTOR));
@@ -185,14 +189,6 @@ public final class AircraftController {
 
     private Group iconLabel(ObservableAircraftState state) {
         Group iconLabel = new Group(icon(state), label(state));
-        iconLabel.layoutXProperty().bind(Bindings.createDoubleBinding(() ->
-                        WebMercator.x(mapParameters.getZoom(), state.getPosition().longitude()) - mapParameters.getMinX(),
-                mapParameters.zoom(), mapParameters.minX(), state.positionProperty()));
-
-        iconLabel.layoutYProperty().bind(Bindings.createDoubleBinding(() ->
-                        y(mapParameters.getZoom(), state.getPosition().latitude()) - mapParameters.getMinY(),
-                mapParameters.zoom(), mapParameters.minY(), state.positionProperty()));
-
         state.positionProperty().addListener((observable, oldValue, newValue) ->
                 state.setPosition(newValue));
         return iconLabel;
@@ -1,31 +1,99 @@
 package ch.epfl.javions.gui;
 
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Preconditions;
 import ch.epfl.javions.Units;
 import ch.epfl.javions.adsb.AircraftStateAccumulator;
+import ch.epfl.javions.adsb.AircraftState;
 import ch.epfl.javions.adsb.Message;
+import ch.epfl.javions.aircraft.AircraftData;
 import ch.epfl.javions.aircraft.AircraftDatabase;
 import ch.epfl.javions.aircraft.IcaoAddress;
+import ch.epfl.javions.aircraft.IcaoMap;
+import javafx.application.Platform;
 import javafx.collections.ObservableSet;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static ch.epfl.javions.adsb.AircraftState.*;
 import static javafx.collections.FXCollections.*;
 
+/**
+ * This class keeps the state of every aircraft in view.
+ * Messages may be fed from any thread: the ICAO address space is split into lock-striped partitions, and the
+ * accumulators write into plain AircraftState instances. Once per frame, the FX thread publishes the aircraft that
+ * changed since the previous frame to their observable states and to the observable set, as a single batch.
+ * Each partition also links its aircraft in the order of their last message, so that a purge only visits the aircraft
+ * that actually expired.
+ */
 public final class AircraftStateManager {
-    private final Map<IcaoAddress, AircraftStateAccumulator<ObservableAircraftState>> association = new HashMap<>();
+    private static final int LOOKUP_THREADS = 2;
+    private static final int PARTITIONS = 16;
+    // the number of partitions of the ICAO address space, a power of two.
+    private static final long DEFAULT_PURGE_HORIZON_NS = (long) 1E9 * (long) Units.Time.MINUTE;
+    private final Partition[] partitions;
+    private static final int BUDGET_CHECK_PERIOD = 16;
+    // the number of aircraft published between two readings of the clock.
+    private final Queue<TrackedAircraft> publishing = new ArrayDeque<>();
+    // the aircraft waiting to be published by the FX thread, in the order in which they changed.
+    private long frames;
+    private long totalFrameNs;
+    private long maxFrameNs;
+    private long lastFrameNs;
+    private long publishedAircraft;
+    // the statistics of the publications, only used by the FX thread.
     private final ObservableSet<ObservableAircraftState> set ;
     private final AircraftDatabase dataBase;
-    private long currentTime;
+    private final Map<IcaoAddress, CompletableFuture<AircraftData>> pendingLookups = new ConcurrentHashMap<>();
+    // the database lookups in progress, so that requests for the same ICAO address share a single lookup
+    private final ExecutorService lookupExecutor;
+    private final GeoPos receiverPosition;
+    private final long purgeHorizonNs;
 
 
 
     public AircraftStateManager(AircraftDatabase data) {
+        this(data, null);
+    }
+
+    public AircraftStateManager(AircraftDatabase data, GeoPos receiverPosition) {
+        this(data, receiverPosition, DEFAULT_PURGE_HORIZON_NS);
+    }
+
+    /**
+     * Constructs a manager that purges the aircraft from which no message was received for the given duration.
+     *
+     * @param data             the aircraft database.
+     * @param receiverPosition the position of the receiver, or null if it is unknown.
+     * @param purgeHorizonNs   the duration after which a silent aircraft is purged, in nanoseconds.
+     * @throws IllegalArgumentException if the duration is not strictly positive.
+     */
+    public AircraftStateManager(AircraftDatabase data, GeoPos receiverPosition, long purgeHorizonNs) {
+        Preconditions.checkArgument(purgeHorizonNs > 0);
         this.dataBase = data;
+        this.receiverPosition = receiverPosition;
+        this.purgeHorizonNs = purgeHorizonNs;
+        this.lookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS, r -> {
+            Thread thread = new Thread(r, "aircraft-database");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.partitions = new Partition[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions[i] = new Partition();
+        }
         set = observableSet();
-        ObservableSet<ObservableAircraftState> states = unmodifiableObservableSet(set);
     }
 
 
@@ -33,28 +101,275 @@ public final class AircraftStateManager {
         return unmodifiableObservableSet(set);
     }
 
-    public void updateWithMessage(Message message) throws IOException {
-        currentTime = message.timeStampNs();
-        IcaoAddress key = message.icaoAddress();
-        if (association.containsKey(key)) {
-            association.get(key).update(message);
-            if (association.get(key).stateSetter().getPosition() != null) {
-                set.add(association.get(key).stateSetter());
+    /**
+     * Updates the state of the aircraft that sent the given message.
+     * This method may be called from any thread; the change becomes visible on the next call to publish.
+     *
+     * @param message the message.
+     */
+    public void updateWithMessage(Message message) {
+        IcaoAddress address = message.icaoAddress();
+        int key = address.asInt();
+        Partition partition = partitions[key & (PARTITIONS - 1)];
+        ObservableAircraftState created = null;
+
+        partition.lock.lock();
+        try {
+            partition.latestTimeStampNs = Math.max(partition.latestTimeStampNs, message.timeStampNs());
+            TrackedAircraft aircraft = partition.aircraft.get(key);
+            if (aircraft == null) {
+                aircraft = new TrackedAircraft(key, new ObservableAircraftState(address, null), receiverPosition);
+                partition.aircraft.put(key, aircraft);
+                created = aircraft.observable;
+            }
+            aircraft.accumulator.update(message);
+            partition.moveToNewest(aircraft);
+            if (!aircraft.changed) {
+                aircraft.changed = true;
+                partition.changed.add(aircraft);
             }
-        } else {
-            association.put(key, new AircraftStateAccumulator<>(new ObservableAircraftState(key, dataBase.get(key))));
+        } finally {
+            partition.lock.unlock();
         }
+
+        if (created != null) {
+            // the data is filled in on the FX thread when the lookup completes
+            lookup(address).thenAcceptAsync(created::setData, Platform::runLater);
+        }
+    }
+
+    /**
+     * Publishes the aircraft that changed since the previous call to their observable states, and adds the ones
+     * whose position is known to the observable set. This method must be called on the FX thread, once per frame.
+     */
+    public void publish() {
+        publish(Long.MAX_VALUE);
     }
 
+    /**
+     * Publishes the aircraft that changed since the previous call, like publish(), but stops once the given time
+     * budget is spent. The aircraft left over are published first on the next call, with their latest values, so a
+     * backlog is caught up over several frames instead of stalling one of them.
+     *
+     * @param budgetNs the time budget of the publication, in nanoseconds.
+     */
+    public void publish(long budgetNs) {
+        long start = System.nanoTime();
+        for (Partition partition : partitions) {
+            partition.lock.lock();
+            try {
+                for (TrackedAircraft aircraft : partition.changed) {
+                    aircraft.pending.copyTo(aircraft.published);
+                    aircraft.pending.clearUpdatedFields();
+                    aircraft.changed = false;
+                    if (!aircraft.queued) {
+                        aircraft.queued = true;
+                        publishing.add(aircraft);
+                    }
+                }
+                partition.changed.clear();
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+
+        int published = 0;
+        while (!publishing.isEmpty()) {
+            if (published % BUDGET_CHECK_PERIOD == 0 && published > 0 && System.nanoTime() - start >= budgetNs) break;
+            TrackedAircraft aircraft = publishing.poll();
+            aircraft.queued = false;
+            if (aircraft.purged) continue;
+            publish(aircraft.published, aircraft.observable);
+            if (aircraft.observable.getPosition() != null) {
+                set.add(aircraft.observable);
+            }
+            published++;
+        }
+
+        long frameNs = System.nanoTime() - start;
+        publishedAircraft += published;
+        frames++;
+        totalFrameNs += frameNs;
+        maxFrameNs = Math.max(maxFrameNs, frameNs);
+        lastFrameNs = frameNs;
+    }
+
+    /**
+     * Returns the statistics of the publications made so far. This method must be called on the FX thread.
+     *
+     * @return the statistics of the publications.
+     */
+    public PublishStatistics publishStatistics() {
+        return new PublishStatistics(lastFrameNs, frames == 0 ? 0 : totalFrameNs / frames, maxFrameNs,
+                publishing.size(), publishedAircraft);
+    }
+
+
+    // Only the caller whose future was installed by computeIfAbsent starts the lookup, so concurrent calls for the same
+    // address share it. A database that cannot be read is reported, and the aircraft is shown without its data.
+    private CompletableFuture<AircraftData> lookup(IcaoAddress key) {
+        CompletableFuture<AircraftData> created = new CompletableFuture<>();
+        CompletableFuture<AircraftData> lookup = pendingLookups.computeIfAbsent(key, k -> created);
+        if (lookup != created) return lookup;
+
+        lookupExecutor.execute(() -> {
+            try {
+                created.complete(dataBase.get(key));
+            } catch (IOException | RuntimeException e) {
+                System.err.printf("Aircraft database lookup failed for %s: %s%n", key.string(), e);
+                created.complete(null);
+            } finally {
+                pendingLookups.remove(key, created);
+            }
+        });
+        return created;
+    }
 
+
+    /**
+     * Removes the aircraft from which no message was received during the purge horizon, by walking each partition
+     * from its least recently updated aircraft until a live one is found.
+     * This method must be called on the FX thread.
+     */
     public void purge() {
-        Iterator<AircraftStateAccumulator<ObservableAircraftState>> iterator = (association.values()).iterator();
-        while (iterator.hasNext()) {
-            AircraftStateAccumulator<ObservableAircraftState> state = iterator.next();
-            if (currentTime - (state.stateSetter()).getLastMessageTimeStampNs() > (long)1E9 * Units.Time.MINUTE) {
-                iterator.remove();
-                set.remove(state.stateSetter());
+        long currentTime = Long.MIN_VALUE;
+        for (Partition partition : partitions) {
+            partition.lock.lock();
+            try {
+                currentTime = Math.max(currentTime, partition.latestTimeStampNs);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+
+        long oldestAllowed = currentTime - purgeHorizonNs;
+        List<TrackedAircraft> expired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            partition.lock.lock();
+            try {
+                while (partition.oldest != null
+                        && partition.oldest.pending.getLastMessageTimeStampNs() < oldestAllowed) {
+                    TrackedAircraft aircraft = partition.oldest;
+                    partition.unlink(aircraft);
+                    partition.aircraft.remove(aircraft.key);
+                    aircraft.purged = true;
+                    expired.add(aircraft);
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        for (TrackedAircraft aircraft : expired) {
+            set.remove(aircraft.observable);
+        }
+    }
+
+    // Writes the fields of the given state set since it was last published to the given observable state, skipping
+    // the ones whose value did not change, so that listeners only hear about actual changes, at most once per frame.
+    private static void publish(AircraftState published, ObservableAircraftState state) {
+        int updated = published.getUpdatedFields();
+        if ((updated & TIME_STAMP) != 0 && published.getLastMessageTimeStampNs() != state.getLastMessageTimeStampNs())
+            state.setLastMessageTimeStampNs(published.getLastMessageTimeStampNs());
+        if ((updated & CATEGORY) != 0 && published.getCategory() != state.getCategory())
+            state.setCategory(published.getCategory());
+        if ((updated & CALL_SIGN) != 0 && !Objects.equals(published.getCallSign(), state.getCallSign()))
+            state.setCallSign(published.getCallSign());
+        if ((updated & (ALTITUDE | POSITION)) != 0) {
+            // both are applied together, so that the trajectory receives a single point per frame
+            GeoPos current = state.getPosition();
+            boolean moved = (updated & POSITION) != 0
+                    && (current == null || current.packed() != published.getPackedPosition());
+            state.setAltitudeAndPosition(
+                    (updated & ALTITUDE) != 0 ? published.getAltitude() : state.getAltitude(),
+                    moved ? published.getPosition() : current);
+        }
+        if ((updated & VELOCITY) != 0 && Double.compare(published.getVelocity(), state.getVelocity()) != 0)
+            state.setVelocity(published.getVelocity());
+        if ((updated & TRACK_OR_HEADING) != 0
+                && Double.compare(published.getTrackOrHeading(), state.getTrackOrHeading()) != 0)
+            state.setTrackOrHeading(published.getTrackOrHeading());
+        published.clearUpdatedFields();
+    }
+
+    /**
+     * The statistics of the publications of a manager.
+     *
+     * @param lastFrameNs    the duration of the last publication, in nanoseconds.
+     * @param averageFrameNs the average duration of a publication, in nanoseconds.
+     * @param maxFrameNs     the longest duration of a publication, in nanoseconds.
+     * @param backlog        the number of aircraft left over by the last publication.
+     * @param published      the number of aircraft updates published so far.
+     */
+    public record PublishStatistics(long lastFrameNs, long averageFrameNs, long maxFrameNs, int backlog,
+                                    long published) {
+    }
+
+    /**
+     * A partition of the ICAO address space, whose fields are guarded by its lock.
+     */
+    private static final class Partition {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final IcaoMap<TrackedAircraft> aircraft = new IcaoMap<>();
+        private final List<TrackedAircraft> changed = new ArrayList<>();
+        // the aircraft that changed since the last publication.
+        private long latestTimeStampNs = Long.MIN_VALUE;
+        private TrackedAircraft oldest;
+        private TrackedAircraft newest;
+        // the ends of the list of aircraft, ordered by the arrival of their last message.
+
+        private void moveToNewest(TrackedAircraft aircraft) {
+            if (aircraft == newest) return;
+            if (aircraft.newer != null) unlink(aircraft);
+
+            aircraft.older = newest;
+            if (newest != null) {
+                newest.newer = aircraft;
+            } else {
+                oldest = aircraft;
+            }
+            newest = aircraft;
+        }
+
+        private void unlink(TrackedAircraft aircraft) {
+            if (aircraft.older != null) {
+                aircraft.older.newer = aircraft.newer;
+            } else {
+                oldest = aircraft.newer;
+            }
+            if (aircraft.newer != null) {
+                aircraft.newer.older = aircraft.older;
+            } else {
+                newest = aircraft.older;
             }
+            aircraft.older = null;
+            aircraft.newer = null;
+        }
+    }
+
+    /**
+     * An aircraft tracked by the manager. The pending state and the flags are guarded by the lock of the partition,
+     * the published state is only used by the FX thread.
+     */
+    private static final class TrackedAircraft {
+        private final int key;
+        private final ObservableAircraftState observable;
+        private final AircraftState pending;
+        private final AircraftState published;
+        private final AircraftStateAccumulator<AircraftState> accumulator;
+        private TrackedAircraft older;
+        private TrackedAircraft newer;
+        // the neighbours of the aircraft in the list of its partition.
+        private boolean changed;
+        private boolean queued;
+        // whether the aircraft waits for its publication, only used by the FX thread.
+        private boolean purged;
+
+        private TrackedAircraft(int key, ObservableAircraftState observable, GeoPos receiverPosition) {
+            this.key = key;
+            this.observable = observable;
+            this.pending = new AircraftState(observable.getIcaoAddress());
+            this.published = new AircraftState(observable.getIcaoAddress());
+            this.accumulator = new AircraftStateAccumulator<>(pending, receiverPosition);
         }
     }
 }
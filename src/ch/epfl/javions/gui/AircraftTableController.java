@@ -121,10 +121,10 @@ public final class AircraftTableController {
         oaciColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>(f.getValue().getIcaoAddress().string()));
         indicatifColumn.setCellValueFactory(f ->
                 f.getValue().callSignProperty().map(CallSign::string));
-        immatriculationColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>((f.getValue().getData())).map(a-> a.registration().string()));
-        modeleColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>((f.getValue().getData())).map(AircraftData::model));
-        typeColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>((f.getValue().getData())).map(a-> a.typeDesignator().string()));
-        descriptionColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>((f.getValue().getData())).map(a-> a.description().string()));
+        immatriculationColumn.setCellValueFactory(f -> f.getValue().dataProperty().map(a-> a.registration().string()));
+        modeleColumn.setCellValueFactory(f -> f.getValue().dataProperty().map(AircraftData::model));
+        typeColumn.setCellValueFactory(f -> f.getValue().dataProperty().map(a-> a.typeDesignator().string()));
+        descriptionColumn.setCellValueFactory(f -> f.getValue().dataProperty().map(a-> a.description().string()));
 
 
 
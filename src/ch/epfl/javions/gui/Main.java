@@ -1,10 +1,18 @@
 package ch.epfl.javions.gui;
 
-import ch.epfl.javions.ByteString;
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Units;
+import ch.epfl.javions.adsb.CompactRecordingReader;
+import ch.epfl.javions.adsb.MergedMessageSource;
 import ch.epfl.javions.adsb.Message;
 import ch.epfl.javions.adsb.MessageParser;
 import ch.epfl.javions.adsb.RawMessage;
+import ch.epfl.javions.adsb.RawMessageQueue;
+import ch.epfl.javions.adsb.RawMessageReader;
+import ch.epfl.javions.adsb.RawMessageRecorder;
+import ch.epfl.javions.adsb.ReplayClock;
 import ch.epfl.javions.aircraft.AircraftDatabase;
+import ch.epfl.javions.aircraft.AircraftIndex;
 import ch.epfl.javions.demodulation.AdsbDemodulator;
 
 import javafx.animation.AnimationTimer;
@@ -24,12 +32,11 @@ import javafx.stage.Stage;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
-import static java.util.Collections.unmodifiableList;
 import static javafx.beans.binding.Bindings.createObjectBinding;
 
 
@@ -43,7 +50,6 @@ import static javafx.beans.binding.Bindings.createObjectBinding;
 public final class Main extends Application {
     private static final int WIDTH = 800;
     private static final int HEIGHT = 600;
-    public static final int CONVERSION = 1000000;
     public static final String JAVIONS = "Javions";
     public static final String PATH = "tile-cache";
     public static final String TILE_SERVER = "tile.openstreetmap.org";
@@ -52,10 +58,28 @@ public final class Main extends Application {
     public static final int MIN_X = 33_530;
     public static final int MIN_Y = 23_070;
     public static final int SECOND = 1_000_000_000;
-    private final ConcurrentLinkedQueue<RawMessage> messageQueue = new ConcurrentLinkedQueue<>();
+    public static final int QUEUE_CAPACITY = 1 << 16;
+    public static final long PUBLISH_BUDGET_NS = 8_000_000;
+    public static final String SPEED = "speed";
+    public static final String DEFAULT_SPEED = "1";
+    public static final String FROM = "from";
+    public static final String RECORD = "record";
+    public static final String RECEIVER = "receiver";
+    public static final String DATABASE = "database";
+    private RawMessageQueue messageQueue;
     private final StatusLineController lineController = new StatusLineController();
-    private long counter = 0;
+    private final LongAdder messageCounter = new LongAdder();
+    private final LongAdder decodedCounter = new LongAdder();
+    // le nombre de messages reçus, incrémenté dès leur entrée dans la file par le fil qui les obtient, et celui des
+    // messages décodés, incrémenté par le fil de décodage ; tous deux sont lus une fois par seconde.
+    private volatile AdsbDemodulator demodulator;
+    private RawMessageRecorder recorder;
     private long purge;
+    private long lastMessageCount;
+    private long lastPublishedCount;
+    private long lastAcceptedCount;
+    private long lastRejectedCount;
+    // les valeurs des compteurs lors de la dernière mise à jour de la ligne d'état.
 
 
     /**
@@ -86,13 +110,21 @@ public final class Main extends Application {
         IntegerProperty aircraftCountProperty = new SimpleIntegerProperty();
         aircraftCountLabel.textProperty().bind(Bindings.convert(aircraftCountProperty));
 
-        //Obtention de la base de données
-        URL u = getClass().getResource(RESOURCE);
-        assert u != null;
-        Path p = Path.of(u.toURI());
-        AircraftDatabase database = new AircraftDatabase(p.toString());
+        //Obtention de la base de données : celle donnée par le paramètre --database (un fichier zip ou un index,
+        //p. ex. --database=aircraft.idx), ou sinon l'index de la base fournie avec l'application.
+        String databaseFile = getParameters().getNamed().get(DATABASE);
+        if (databaseFile == null) {
+            URL u = getClass().getResource(RESOURCE);
+            assert u != null;
+            databaseFile = indexOf(Path.of(u.toURI())).toString();
+        }
+        AircraftDatabase database = new AircraftDatabase(databaseFile);
 
-        AircraftStateManager aircraftStateManager = new AircraftStateManager(database);
+        //la position du récepteur, donnée par le paramètre --receiver (p. ex. --receiver=6.57,46.52), permet de
+        //positionner un aéronef dès son premier message de position.
+        String receiver = getParameters().getNamed().get(RECEIVER);
+        AircraftStateManager aircraftStateManager =
+                new AircraftStateManager(database, receiver == null ? null : parsePosition(receiver));
         ObjectProperty<ObservableAircraftState> property = new SimpleObjectProperty<>();
         AircraftController aircraftController = new AircraftController(map, aircraftStateManager.states(), property);
         AircraftTableController aircraftTable = new AircraftTableController(aircraftStateManager.states(), property);
@@ -115,34 +147,42 @@ public final class Main extends Application {
         //aircraftTable.setOnDoubleClick(position -> baseMapController.centerOn(position.getPosition()));
 
         //fil chargé d'obtenir les messages provenant des aéronefs.
+        //la file est bornée : en direct, les messages les plus anciens sont sacrifiés si le décodage prend du retard,
+        //alors qu'un enregistrement est simplement lu moins vite.
         Thread messageThread;
-        if (getParameters().getRaw().isEmpty()) {
+        if (getParameters().getUnnamed().isEmpty()) {
             //soit en démodulant le signal radio.
+            messageQueue = new RawMessageQueue(QUEUE_CAPACITY, RawMessageQueue.OverflowPolicy.DROP_OLDEST);
+            //les messages sont en outre enregistrés dans le répertoire donné par le paramètre --record, s'il y en a un.
+            String recordDirectory = getParameters().getNamed().get(RECORD);
+            if (recordDirectory != null) {
+                recorder = new RawMessageRecorder(Path.of(recordDirectory));
+                lineController.recordingProperty().set(true);
+            }
             messageThread = threadFromDemodulator();
         } else {
             //soit en lisant les messages depuis un fichier.
+            messageQueue = new RawMessageQueue(QUEUE_CAPACITY, RawMessageQueue.OverflowPolicy.BLOCK);
             messageThread = threadFromFile();
         }
         messageThread.setDaemon(true);
         messageThread.start();
 
-        // Animation des aéronefs
+        //fil chargé de décoder les messages et de mettre à jour l'état des aéronefs, hors du fil JavaFX.
+        Thread ingestionThread = threadFromQueue(aircraftStateManager);
+        ingestionThread.setDaemon(true);
+        ingestionThread.start();
+
+        // Animation des aéronefs : les aéronefs modifiés depuis l'image précédente sont publiés en une fois, dans la
+        // limite d'un budget de temps par image pour que l'interface reste fluide lors d'un rattrapage.
         new AnimationTimer() {
             @Override
             public void handle(long now) {
-                try {
-                    while (!messageQueue.isEmpty()) {
-                        Message m = MessageParser.parse(messageQueue.remove());
-                        if (m != null) aircraftStateManager.updateWithMessage(m);
-                    }
-                    lineController.messageCountProperty().set(++counter);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                aircraftStateManager.publish(PUBLISH_BUDGET_NS);
                 if (now - purge >= SECOND) {
                     aircraftStateManager.purge();
+                    updateStatusLine(aircraftStateManager, now - purge);
                     purge = now;
-
                 }
             }
         }.start();
@@ -157,60 +197,154 @@ public final class Main extends Application {
     }
 
 
-    // la méthode lit la totalité des messages du fichier binaire fourni, et les retourne dans une liste
-    private List<RawMessage> readAllMessages(String fileName)
-            throws IOException {
-        List<RawMessage> allMessages = new LinkedList<>();
-        try (DataInputStream s = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
-            byte[] bytes = new byte[RawMessage.LENGTH];
-            while (true) {
-                long timeStampNs = s.readLong();
-                int bytesRead = s.readNBytes(bytes, 0, bytes.length);
-                assert bytesRead == RawMessage.LENGTH;
-                ByteString message = new ByteString(bytes);
-                Message parsedMessage = MessageParser.parse(new RawMessage(timeStampNs, message));
-                if (parsedMessage != null) {
-                    allMessages.add(new RawMessage(timeStampNs, message));
-                }
-            }
-        } catch (EOFException e) {
+    /**
+     * Termine l'application, en écrivant sur le disque les messages encore en attente d'enregistrement.
+     *
+     * @throws IOException en cas d'erreur lors de l'enregistrement.
+     */
+    @Override
+    public void stop() throws IOException {
+        if (recorder != null) recorder.close();
+    }
+
+
+    // la méthode met à jour la ligne d'état à partir des compteurs, lus une seule fois par seconde pour que leur coût
+    // sur le chemin des messages reste négligeable.
+    private void updateStatusLine(AircraftStateManager aircraftStateManager, long elapsedNs) {
+        double seconds = (double) elapsedNs / SECOND;
+        long messageCount = messageCounter.sum();
+        long publishedCount = aircraftStateManager.publishStatistics().published();
+        lineController.messageCountProperty().set(messageCount);
+        lineController.decodedCountProperty().set(decodedCounter.sum());
+        lineController.messageRateProperty().set((messageCount - lastMessageCount) / seconds);
+        lineController.aircraftRateProperty().set((publishedCount - lastPublishedCount) / seconds);
+        lineController.queueDepthProperty().set(messageQueue.size());
+        lastMessageCount = messageCount;
+        lastPublishedCount = publishedCount;
+
+        if (recorder != null) {
+            IOException failure = recorder.lastFailure();
+            lineController.recordingDroppedProperty().set(recorder.droppedCount());
+            lineController.recordingFailureProperty().set(failure == null ? "" : failure.toString());
+        }
+
+        AdsbDemodulator d = demodulator;
+        if (d != null) {
+            long acceptedCount = d.acceptedCount();
+            long rejectedCount = d.rejectedCount();
+            long candidates = (acceptedCount - lastAcceptedCount) + (rejectedCount - lastRejectedCount);
+            lineController.crcRejectRateProperty().set(
+                    candidates == 0 ? 0 : (double) (rejectedCount - lastRejectedCount) / candidates);
+            lastAcceptedCount = acceptedCount;
+            lastRejectedCount = rejectedCount;
         }
-        return unmodifiableList(allMessages);
     }
 
-    //Methode retournant un thread en lisant les messages depuis un fichier.
+
+    //Methode retournant un thread en lisant les messages depuis un fichier, au fur et à mesure et au rythme de leur
+    //horodatage, accéléré selon le paramètre --speed (p. ex. --speed=4, ou --speed=max pour une relecture sans
+    //attente) ; la file est fermée à la fin de l'enregistrement. L'enregistrement peut en outre être relu à partir
+    //d'un instant donné en secondes par le paramètre --from (p. ex. --from=3600). Lorsque plusieurs fichiers, ou un
+    //répertoire contenant les fichiers successifs d'un récepteur, sont donnés, leurs messages sont fusionnés par ordre
+    //chronologique.
     private Thread threadFromFile() {
+        ReplayClock clock = ReplayClock.of(getParameters().getNamed().getOrDefault(SPEED, DEFAULT_SPEED));
+        String from = getParameters().getNamed().get(FROM);
+        List<Path> files = getParameters().getUnnamed().stream().map(Path::of).toList();
+        Path file = files.get(0);
         return new Thread(() -> {
-            long begin = System.currentTimeMillis();
             try {
-                List<RawMessage> list = readAllMessages(getParameters().getRaw().get(0));
-                for (RawMessage message : list) {
-                    long dt = System.currentTimeMillis() - begin;
-                    if (MessageParser.parse(message) != null) {
-                        if ((MessageParser.parse(message).timeStampNs() / CONVERSION - dt) >= 0) {
-                            Thread.sleep((MessageParser.parse(message).timeStampNs() / CONVERSION - dt));
-                            messageQueue.add(message);
-                        }
+                long fromNs = from == null ? Long.MIN_VALUE : (long) (Double.parseDouble(from) * SECOND);
+                if (files.size() > 1 || Files.isDirectory(file)) {
+                    try (MergedMessageSource source = new MergedMessageSource(files, fromNs)) {
+                        clock.replay(source, messageQueue, messageCounter);
+                    }
+                } else if (CompactRecordingReader.isCompact(file)) {
+                    try (CompactRecordingReader reader = new CompactRecordingReader(file)) {
+                        if (from != null) reader.seek(fromNs);
+                        clock.replay(reader, messageQueue, messageCounter);
+                    }
+                } else {
+                    try (RawMessageReader reader = new RawMessageReader(file)) {
+                        if (from != null) reader.seek(fromNs);
+                        clock.replay(reader, messageQueue, messageCounter);
                     }
                 }
+                messageQueue.close();
             } catch (IOException | InterruptedException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    // Methode retournant l'index de la base de données stockée dans le fichier zip donné, placé à côté de celui-ci et
+    // (re)construit s'il n'existe pas ou est plus ancien que le fichier zip. Si l'index ne peut pas être construit,
+    // p. ex. faute de droits d'écriture, c'est le fichier zip lui-même qui est retourné.
+    private static Path indexOf(Path zipFile) {
+        String name = zipFile.getFileName().toString();
+        Path indexFile = zipFile.resolveSibling(name.substring(0, name.lastIndexOf('.')) + AircraftIndex.EXTENSION);
+        try {
+            if (!Files.exists(indexFile)
+                    || Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(zipFile)) < 0) {
+                AircraftIndex.build(zipFile.toString(), indexFile);
+            }
+            return indexFile;
+        } catch (IOException e) {
+            System.err.printf("Index de la base de données non construit (%s), le fichier zip est utilisé%n", e);
+            return zipFile;
+        }
+    }
+
+    // Methode retournant la position donnée sous la forme "longitude,latitude", en degrés.
+    private static GeoPos parsePosition(String position) {
+        String[] coordinates = position.split(",");
+        if (coordinates.length != 2) {
+            throw new IllegalArgumentException("position attendue sous la forme longitude,latitude : " + position);
+        }
+        double longitude = Double.parseDouble(coordinates[0].strip());
+        double latitude = Double.parseDouble(coordinates[1].strip());
+        longitude = Units.convert(longitude, Units.Angle.DEGREE, Units.Angle.T32);
+        latitude = Units.convert(latitude, Units.Angle.DEGREE, Units.Angle.T32);
+        return new GeoPos((int) Math.rint(longitude), (int) Math.rint(latitude));
+    }
+
+    // Methode retournant un thread qui décode les messages de la file et les transmet au gestionnaire d'états.
+    private Thread threadFromQueue(AircraftStateManager aircraftStateManager) {
+        return new Thread(() -> {
+            try {
+                RawMessage rawMessage;
+                while ((rawMessage = messageQueue.take()) != null) {
+                    // une erreur lors du traitement d'un message est signalée, mais n'arrête pas la réception
+                    try {
+                        Message m = MessageParser.parse(rawMessage);
+                        if (m != null) {
+                            aircraftStateManager.updateWithMessage(m);
+                            decodedCounter.increment();
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.printf("Message ignoré après une erreur (%s) : %s%n", rawMessage, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
     // Methode retournant un thread en démodulant les messages.
     private Thread threadFromDemodulator() {
         return new Thread(() -> {
             try {
-                AdsbDemodulator demodulator = new AdsbDemodulator(System.in);
+                demodulator = new AdsbDemodulator(System.in);
                 while (true) {
                     RawMessage message = demodulator.nextMessage();
                     if (message != null) {
-                        messageQueue.add(message);
+                        messageQueue.put(message);
+                        messageCounter.increment();
+                        if (recorder != null) recorder.record(message);
                     }
                 }
-            } catch (IOException e) {
+            } catch (IOException | InterruptedException e) {
                 throw new RuntimeException(e);
             }
         });
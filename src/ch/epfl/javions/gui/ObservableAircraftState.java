@@ -1,14 +1,13 @@
 package ch.epfl.javions.gui;
 
 import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Units;
 import ch.epfl.javions.adsb.AircraftStateSetter;
 import ch.epfl.javions.adsb.CallSign;
 import ch.epfl.javions.aircraft.AircraftData;
 import ch.epfl.javions.aircraft.IcaoAddress;
 import javafx.beans.property.*;
 import javafx.collections.ObservableList;
-import static javafx.collections.FXCollections.observableArrayList;
-import static javafx.collections.FXCollections.unmodifiableObservableList;
 
 /**
  *  @author Salma El Yadouni (340859)
@@ -20,10 +19,17 @@ import static javafx.collections.FXCollections.unmodifiableObservableList;
 
 public final class ObservableAircraftState implements AircraftStateSetter {
 
+    private static final int DEFAULT_MAX_TRAJECTORY_POINTS = 2_048;
+    private static final long DEFAULT_MAX_TRAJECTORY_AGE_NS = (long) 1E9 * (long) Units.Time.HOUR;
+    private static final double DEFAULT_CROSS_TRACK_TOLERANCE = 20;
+    // in meters, about a pixel at zoom level 12.
+    private static final double DEFAULT_ALTITUDE_TOLERANCE = 30;
+    // in meters, a little more than the 25 ft resolution of the altitude in ADS-B messages.
+
     private final IcaoAddress icaoAddress;
     //the ICAO address of the aircraft.
-    private final AircraftData data;
-    //contains all the fixed characteristics of this aircraft, sourced from the Mictronics database
+    private final ObjectProperty<AircraftData> data;
+    //contains all the fixed characteristics of this aircraft, sourced from the Mictronics database (null until known)
     private final LongProperty lastMessageTimeStampNs;
     //contains the timestamp of the last message received from the aircraft, in nanoseconds.
     private final IntegerProperty category;
@@ -36,11 +42,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
     private final DoubleProperty altitude;
     // the property that contains the aircraft altitude ,in meters.
 
-    private final ObservableList<AirbornePos> trajectory;
-    //  contains an observable and modifiable list of the aircraft trajectory.
-
-    private final ObservableList<AirbornePos> unmodifiableTrajectory;
-    // contains an unmodifiable but observable view of the previous list.
+    private final TrajectoryBuffer trajectory;
+    //  contains the bounded trajectory of the aircraft, which is also an unmodifiable observable list.
 
     private final DoubleProperty velocity;
     // the property that contains the aircraft velocity, in meters/second.
@@ -57,10 +60,28 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @param data        the aircraft data
      */
     public ObservableAircraftState(IcaoAddress icaoAddress, AircraftData data) {
+        this(icaoAddress, data, DEFAULT_MAX_TRAJECTORY_POINTS, DEFAULT_MAX_TRAJECTORY_AGE_NS,
+                DEFAULT_CROSS_TRACK_TOLERANCE, DEFAULT_ALTITUDE_TOLERANCE);
+    }
+
+    /**
+     * Constructs a new ObservableAircraftState object whose trajectory keeps at most the given number of points,
+     * none of them older than the given age, and drops the points that lie within the given tolerances of it.
+     *
+     * @param icaoAddress           the ICAO address of the aircraft
+     * @param data                  the aircraft data
+     * @param maxTrajectoryPoints   the maximum number of points of the trajectory
+     * @param maxTrajectoryAgeNs    the maximum age of the points of the trajectory, in nanoseconds
+     * @param crossTrackTolerance   the horizontal tolerance of the trajectory simplification, in meters
+     * @param altitudeTolerance     the vertical tolerance of the trajectory simplification, in meters
+     */
+    public ObservableAircraftState(IcaoAddress icaoAddress, AircraftData data,
+                                   int maxTrajectoryPoints, long maxTrajectoryAgeNs,
+                                   double crossTrackTolerance, double altitudeTolerance) {
         this.icaoAddress = icaoAddress;
-        this.trajectory = observableArrayList();
-        this.unmodifiableTrajectory = unmodifiableObservableList(trajectory);
-        this.data = data;
+        this.trajectory = new TrajectoryBuffer(maxTrajectoryPoints, maxTrajectoryAgeNs,
+                crossTrackTolerance, altitudeTolerance);
+        this.data = new SimpleObjectProperty<>(data);
         this.lastMessageTimeStampNs = new SimpleLongProperty();
         this.category = new SimpleIntegerProperty();
         this.callSign = new SimpleObjectProperty<>();
@@ -85,9 +106,27 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return the aircraft data
      */
     public AircraftData getData() {
+        return data.get();
+    }
+
+    /**
+     * Returns the read-only property for the aircraft data, which is null as long as the data is unknown.
+     *
+     * @return the read-only property for the aircraft data
+     */
+    public ReadOnlyObjectProperty<AircraftData> dataProperty() {
         return data;
     }
 
+    /**
+     * Sets the aircraft data, once it has been fetched from the database.
+     *
+     * @param data the aircraft data
+     */
+    public void setData(AircraftData data) {
+        this.data.set(data);
+    }
+
     /**
      * Returns the last message timestamp in nanoseconds.
      *
@@ -185,7 +224,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return the trajectory of the aircraft
      */
     public ObservableList<AirbornePos> getTrajectory() {
-        return unmodifiableTrajectory;
+        return trajectory;
     }
 
     /**
@@ -242,10 +281,25 @@ public final class ObservableAircraftState implements AircraftStateSetter {
     @Override
     public void setPosition(GeoPos position) {
         if (!Double.isNaN(getAltitude()))
-            trajectory.add(new AirbornePos(position, getAltitude()));
+            trajectory.append(position.packed(), getAltitude(), getLastMessageTimeStampNs());
         this.position.set(position);
     }
 
+    /**
+     * Sets the position of the aircraft from its packed form (see GeoPos.pack). The trajectory is fed with the packed
+     * position directly, and a GeoPos is only created when the position actually changed.
+     *
+     * @param position the packed position of the aircraft
+     */
+    @Override
+    public void setPosition(long position) {
+        if (!Double.isNaN(getAltitude()))
+            trajectory.append(position, getAltitude(), getLastMessageTimeStampNs());
+        GeoPos current = getPosition();
+        if (current == null || current.packed() != position)
+            this.position.set(new GeoPos(GeoPos.unpackLon(position), GeoPos.unpackLat(position)));
+    }
+
     /**
      * Sets the altitude of the aircraft.
      * If the aircraft has a valid position, it adds a new AirbornePos to the trajectory with the given altitude and timestamp.
@@ -254,16 +308,28 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     public void setAltitude(double altitude) {
         if (getPosition() != null) {
-            AirbornePos lastPosition = trajectory.get(trajectory.size() - 1);
-            AirbornePos positionUpdated = new AirbornePos(getPosition(), altitude);
-            if (!getTrajectory().isEmpty()) {
-                trajectory.add(positionUpdated);
-            } else if((lastPosition.equals(positionUpdated))){
-                trajectory.set(trajectory.size() - 1, new AirbornePos(getPosition(), altitude));
-            }
+            trajectory.append(getPosition().packed(), altitude, getLastMessageTimeStampNs());
         }
         this.altitude.setValue(altitude);
     }
+    /**
+     * Sets the altitude and the position of the aircraft at once, adding at most one point to the trajectory:
+     * a point is added if the aircraft moved, or if its altitude changed while its position is known.
+     * Nothing is written if neither value changed.
+     *
+     * @param altitude the altitude of the aircraft
+     * @param position the position of the aircraft, or null if it is still unknown
+     */
+    public void setAltitudeAndPosition(double altitude, GeoPos position) {
+        boolean moved = position != null && !position.equals(getPosition());
+        boolean climbed = Double.compare(altitude, getAltitude()) != 0;
+        if (!moved && !climbed) return;
+
+        this.altitude.setValue(altitude);
+        if (position != null) trajectory.append(position.packed(), altitude, getLastMessageTimeStampNs());
+        if (moved) this.position.set(position);
+    }
+
     @Override
     public void setVelocity(double velocity) {
         this.velocity.setValue(velocity);
@@ -0,0 +1,135 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.WebMercator;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.scene.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class caches the Web Mercator projection of every aircraft shown on the map.
+ * The zoom-0 coordinates of an aircraft are computed once per position update, so that a change of the map
+ * parameters only needs a multiply-add per aircraft, done in a single pass over primitive arrays on the next pulse.
+ */
+public final class ProjectionCache {
+    private static final int INITIAL_CAPACITY = 64;
+    private final MapParameters mapParameters;
+    private final Map<ObservableAircraftState, Integer> slots;
+    // the slot of each aircraft in the arrays below.
+    private ObservableAircraftState[] states;
+    private Node[] nodes;
+    // the node placed at the position of each aircraft.
+    private double[] mercatorX;
+    private double[] mercatorY;
+    // the zoom-0 Web Mercator coordinates of each aircraft.
+    private int size;
+    private boolean relayoutNeeded;
+
+    /**
+     * Constructs a projection cache that follows the given map parameters.
+     *
+     * @param parameters the parameters of the visible portion of the map.
+     */
+    public ProjectionCache(MapParameters parameters) {
+        this.mapParameters = parameters;
+        this.slots = new HashMap<>();
+        this.states = new ObservableAircraftState[INITIAL_CAPACITY];
+        this.nodes = new Node[INITIAL_CAPACITY];
+        this.mercatorX = new double[INITIAL_CAPACITY];
+        this.mercatorY = new double[INITIAL_CAPACITY];
+
+        InvalidationListener parametersListener = o -> relayoutOnNextPulse();
+        mapParameters.zoom().addListener(parametersListener);
+        mapParameters.minX().addListener(parametersListener);
+        mapParameters.minY().addListener(parametersListener);
+    }
+
+    /**
+     * Adds an aircraft to the cache and places the given node at its position.
+     *
+     * @param state the aircraft state.
+     * @param node  the node to place at the position of the aircraft.
+     */
+    public void add(ObservableAircraftState state, Node node) {
+        if (size == states.length) {
+            int capacity = 2 * size;
+            states = Arrays.copyOf(states, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+            mercatorX = Arrays.copyOf(mercatorX, capacity);
+            mercatorY = Arrays.copyOf(mercatorY, capacity);
+        }
+        slots.put(state, size);
+        states[size] = state;
+        nodes[size] = node;
+        size++;
+        update(state);
+    }
+
+    /**
+     * Projects the current position of the given aircraft and moves its node accordingly.
+     * This method must be called each time the position of the aircraft changes.
+     *
+     * @param state the aircraft state.
+     */
+    public void update(ObservableAircraftState state) {
+        Integer slot = slots.get(state);
+        GeoPos position = state.getPosition();
+        if (slot == null || position == null) return;
+
+        long packed = position.packed();
+        mercatorX[slot] = WebMercator.xOfPacked(0, packed);
+        mercatorY[slot] = WebMercator.yOfPacked(0, packed);
+        layout(slot, Math.scalb(1d, mapParameters.getZoom()), mapParameters.getMinX(), mapParameters.getMinY());
+    }
+
+    /**
+     * Removes an aircraft from the cache.
+     *
+     * @param state the aircraft state.
+     */
+    public void remove(ObservableAircraftState state) {
+        Integer slot = slots.remove(state);
+        if (slot == null) return;
+
+        int last = --size;
+        if (slot != last) {
+            states[slot] = states[last];
+            nodes[slot] = nodes[last];
+            mercatorX[slot] = mercatorX[last];
+            mercatorY[slot] = mercatorY[last];
+            slots.put(states[slot], slot);
+        }
+        states[last] = null;
+        nodes[last] = null;
+    }
+
+    /**
+     * Moves the nodes of all aircraft if the map parameters changed since the last call.
+     * This method is meant to be registered as a pre-layout pulse listener of the scene.
+     */
+    public void relayoutIfNeeded() {
+        if (!relayoutNeeded) return;
+        relayoutNeeded = false;
+
+        double scale = Math.scalb(1d, mapParameters.getZoom());
+        double minX = mapParameters.getMinX();
+        double minY = mapParameters.getMinY();
+        for (int i = 0; i < size; i++) {
+            layout(i, scale, minX, minY);
+        }
+    }
+
+    private void layout(int slot, double scale, double minX, double minY) {
+        nodes[slot].setLayoutX(mercatorX[slot] * scale - minX);
+        nodes[slot].setLayoutY(mercatorY[slot] * scale - minY);
+    }
+
+    private void relayoutOnNextPulse() {
+        relayoutNeeded = true;
+        Platform.requestNextPulse();
+    }
+}
@@ -1,5 +1,6 @@
 package ch.epfl.javions.gui;
 
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
@@ -14,6 +15,14 @@ public final class StatusLineController {
     private final BorderPane pane;
     private final IntegerProperty aircraftCountProperty;
     private final LongProperty messageCountProperty;
+    private final LongProperty decodedCountProperty;
+    private final DoubleProperty messageRateProperty;
+    private final DoubleProperty aircraftRateProperty;
+    private final DoubleProperty crcRejectRateProperty;
+    private final IntegerProperty queueDepthProperty;
+    private final BooleanProperty recordingProperty;
+    private final LongProperty recordingDroppedProperty;
+    private final StringProperty recordingFailureProperty;
 
 
     /**
@@ -22,16 +31,36 @@ public final class StatusLineController {
     public StatusLineController() {
         Text aircraftCountText = new Text();
         Text messageCountText = new Text();
+        Text throughputText = new Text();
+        Text recordingText = new Text();
         aircraftCountProperty = new SimpleIntegerProperty();
         messageCountProperty = new SimpleLongProperty();
-        pane = new BorderPane(null,null,messageCountText,null,aircraftCountText);
+        decodedCountProperty = new SimpleLongProperty();
+        messageRateProperty = new SimpleDoubleProperty();
+        aircraftRateProperty = new SimpleDoubleProperty();
+        crcRejectRateProperty = new SimpleDoubleProperty();
+        queueDepthProperty = new SimpleIntegerProperty();
+        recordingProperty = new SimpleBooleanProperty();
+        recordingDroppedProperty = new SimpleLongProperty();
+        recordingFailureProperty = new SimpleStringProperty("");
+        pane = new BorderPane(throughputText,null,messageCountText,recordingText,aircraftCountText);
         pane.getStyleClass().add("status.css");
 
         // bindings
         aircraftCountText.textProperty().bind(
                 aircraftCountProperty.asString("Aéronefs visibles : %s"));
-        messageCountText.textProperty().bind(
-                messageCountProperty.asString("Messages reçus : %s"));
+        messageCountText.textProperty().bind(Bindings.format(
+                "Messages reçus : %d   décodés : %d", messageCountProperty, decodedCountProperty));
+        throughputText.textProperty().bind(Bindings.format(
+                "Messages/s : %.0f   Aéronefs/s : %.0f   Rejet CRC : %.1f %%   File : %d",
+                messageRateProperty, aircraftRateProperty, crcRejectRateProperty.multiply(100), queueDepthProperty));
+        // la ligne de l'enregistrement n'occupe de place que si les messages sont enregistrés
+        recordingText.visibleProperty().bind(recordingProperty);
+        recordingText.managedProperty().bind(recordingProperty);
+        recordingText.textProperty().bind(Bindings.when(recordingFailureProperty.isEmpty())
+                .then(Bindings.format("Enregistrement : %d messages perdus", recordingDroppedProperty))
+                .otherwise(Bindings.format("Enregistrement : %d messages perdus, dernière erreur : %s",
+                        recordingDroppedProperty, recordingFailureProperty)));
     }
 
     /**
@@ -52,4 +81,55 @@ public final class StatusLineController {
      * @return messageCountProperty.
      */
     public LongProperty messageCountProperty() {return messageCountProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant le nombre de messages reçus qui ont été décodés
+     * depuis le début de l'exécution du programme.
+     * @return decodedCountProperty.
+     */
+    public LongProperty decodedCountProperty() {return decodedCountProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant le nombre de messages reçus par seconde.
+     * @return messageRateProperty.
+     */
+    public DoubleProperty messageRateProperty() {return messageRateProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant le nombre de mises à jour d'aéronefs affichées par seconde.
+     * @return aircraftRateProperty.
+     */
+    public DoubleProperty aircraftRateProperty() {return aircraftRateProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant la proportion des messages démodulés rejetés car leur CRC est
+     * incorrect, entre 0 et 1.
+     * @return crcRejectRateProperty.
+     */
+    public DoubleProperty crcRejectRateProperty() {return crcRejectRateProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant le nombre de messages en attente de décodage.
+     * @return queueDepthProperty.
+     */
+    public IntegerProperty queueDepthProperty() {return queueDepthProperty;}
+
+    /**
+     * retourne la propriété (modifiable) indiquant si les messages reçus sont enregistrés.
+     * @return recordingProperty.
+     */
+    public BooleanProperty recordingProperty() {return recordingProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant le nombre de messages que l'enregistreur a perdus.
+     * @return recordingDroppedProperty.
+     */
+    public LongProperty recordingDroppedProperty() {return recordingDroppedProperty;}
+
+    /**
+     * retourne la propriété (modifiable) contenant la description de la dernière erreur d'écriture de l'enregistreur,
+     * vide s'il n'y en a pas eu.
+     * @return recordingFailureProperty.
+     */
+    public StringProperty recordingFailureProperty() {return recordingFailureProperty;}
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Preconditions;
+import ch.epfl.javions.Units;
+import ch.epfl.javions.gui.ObservableAircraftState.AirbornePos;
+import javafx.collections.ObservableListBase;
+
+import java.util.List;
+
+/**
+ * This class stores the trajectory of an aircraft in a ring buffer of primitive arrays: packed position, altitude
+ * and timestamp of each point. It keeps at most a given number of points, and forgets the points older than a given
+ * age, so the memory used by an aircraft has a fixed upper bound however long it is tracked.
+ * The buffer is also an unmodifiable observable list, whose elements are only created when they are read.
+ * <p>
+ * The trajectory is also simplified while it is recorded, with an opening window: the last point stays provisional
+ * as long as it, and every point it already replaced, lies within the cross-track and altitude tolerances of the
+ * segment joining the point before it to the newest one, in which case the newest point replaces it. Straight and
+ * level segments are thus stored as their two ends.
+ */
+public final class TrajectoryBuffer extends ObservableListBase<AirbornePos> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_REPLACED_POINTS = 64;
+    private static final double EARTH_RADIUS = 6_371_000;
+    // the mean radius of the Earth, in meters.
+    private final int maxPoints;
+    private final long maxAgeNs;
+    private final double crossTrackTolerance;
+    private final double altitudeTolerance;
+    private final long[] replacedPositions = new long[MAX_REPLACED_POINTS];
+    private final double[] replacedAltitudes = new double[MAX_REPLACED_POINTS];
+    // the points replaced since the second to last point of the trajectory was recorded.
+    private int replacedCount;
+    private long[] positions;
+    private double[] altitudes;
+    private long[] timeStamps;
+    // the points of the trajectory, the oldest one being at index head.
+    private int head;
+    private int size;
+
+    /**
+     * Constructs an empty trajectory buffer, that does not simplify the trajectory.
+     *
+     * @param maxPoints the maximum number of points kept.
+     * @param maxAgeNs  the maximum age of the points kept, relative to the most recent one, in nanoseconds.
+     * @throws IllegalArgumentException if one of the limits is not strictly positive.
+     */
+    public TrajectoryBuffer(int maxPoints, long maxAgeNs) {
+        this(maxPoints, maxAgeNs, 0, 0);
+    }
+
+    /**
+     * Constructs an empty trajectory buffer, that simplifies the trajectory within the given tolerances.
+     * A tolerance of zero only drops the points that lie exactly on the trajectory.
+     *
+     * @param maxPoints           the maximum number of points kept.
+     * @param maxAgeNs            the maximum age of the points kept, relative to the most recent one, in nanoseconds.
+     * @param crossTrackTolerance the maximum horizontal distance between a dropped point and the trajectory, in meters.
+     * @param altitudeTolerance   the maximum vertical distance between a dropped point and the trajectory, in meters.
+     * @throws IllegalArgumentException if one of the limits is not strictly positive, or one of the tolerances is
+     *                                  negative.
+     */
+    public TrajectoryBuffer(int maxPoints, long maxAgeNs, double crossTrackTolerance, double altitudeTolerance) {
+        Preconditions.checkArgument(maxPoints > 0 && maxAgeNs > 0);
+        Preconditions.checkArgument(crossTrackTolerance >= 0 && altitudeTolerance >= 0);
+        this.maxPoints = maxPoints;
+        this.maxAgeNs = maxAgeNs;
+        this.crossTrackTolerance = crossTrackTolerance;
+        this.altitudeTolerance = altitudeTolerance;
+        int capacity = Math.min(maxPoints, INITIAL_CAPACITY);
+        this.positions = new long[capacity];
+        this.altitudes = new double[capacity];
+        this.timeStamps = new long[capacity];
+    }
+
+    @Override
+    public AirbornePos get(int index) {
+        int i = slot(index);
+        long position = positions[i];
+        return new AirbornePos(new GeoPos(GeoPos.unpackLon(position), GeoPos.unpackLat(position)), altitudes[i]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the timestamp of the point at the given index.
+     *
+     * @param index the index of the point, 0 being the oldest one.
+     * @return the timestamp of the point, in nanoseconds.
+     */
+    public long timeStampNs(int index) {
+        return timeStamps[slot(index)];
+    }
+
+    /**
+     * Appends a point to the trajectory, after forgetting the points that became too old and, if the buffer is full,
+     * the oldest one, or replaces the last point with it if the trajectory stays within the tolerances without it.
+     * The listeners are notified of all of this as a single change.
+     *
+     * @param position    the packed position of the aircraft (see GeoPos.pack).
+     * @param altitude    the altitude of the aircraft, in meters.
+     * @param timeStampNs the timestamp of the point, in nanoseconds.
+     */
+    void append(long position, double altitude, long timeStampNs) {
+        beginChange();
+        try {
+            int oldSize = size;
+            while (size > 0 && timeStampNs - timeStamps[head] > maxAgeNs) {
+                removeOldest();
+            }
+            if (size != oldSize) {
+                // the point before the last one may be gone, the points it replaced are then meaningless
+                replacedCount = 0;
+            } else if (size >= 2 && replacedCount < MAX_REPLACED_POINTS && canReplaceLast(position, altitude)) {
+                int last = (head + size - 1) % positions.length;
+                replacedPositions[replacedCount] = positions[last];
+                replacedAltitudes[replacedCount] = altitudes[last];
+                replacedCount++;
+                AirbornePos removed = get(size - 1);
+                positions[last] = position;
+                altitudes[last] = altitude;
+                timeStamps[last] = timeStampNs;
+                nextReplace(size - 1, size, List.of(removed));
+                return;
+            }
+            replacedCount = 0;
+            if (size == maxPoints) {
+                removeOldest();
+            } else if (size == positions.length) {
+                grow();
+            }
+            int tail = (head + size) % positions.length;
+            positions[tail] = position;
+            altitudes[tail] = altitude;
+            timeStamps[tail] = timeStampNs;
+            size++;
+            nextAdd(size - 1, size);
+        } finally {
+            endChange();
+        }
+    }
+
+    // Returns true if and only if the last point, and the ones it replaced, lie within the tolerances of the segment
+    // joining the point before it to the given one. The distances are measured on a plane tangent to the Earth at the
+    // start of the segment, which is accurate enough over the length of a segment.
+    private boolean canReplaceLast(long position, double altitude) {
+        int start = (head + size - 2) % positions.length;
+        int last = (head + size - 1) % positions.length;
+        long origin = positions[start];
+        double metersPerLongitudeT32 = Units.Angle.T32 * EARTH_RADIUS
+                * Math.cos(Units.Angle.T32 * GeoPos.unpackLat(origin));
+        double endX = dx(origin, position, metersPerLongitudeT32);
+        double endY = dy(origin, position);
+        double startAltitude = altitudes[start];
+
+        for (int i = 0; i <= replacedCount; i++) {
+            long point = i < replacedCount ? replacedPositions[i] : positions[last];
+            double pointAltitude = i < replacedCount ? replacedAltitudes[i] : altitudes[last];
+            double x = dx(origin, point, metersPerLongitudeT32);
+            double y = dy(origin, point);
+            double squaredLength = endX * endX + endY * endY;
+            double t = squaredLength == 0 ? 0 : Math.max(0, Math.min(1, (x * endX + y * endY) / squaredLength));
+            if (Math.hypot(x - t * endX, y - t * endY) > crossTrackTolerance
+                    || Math.abs(pointAltitude - (startAltitude + t * (altitude - startAltitude))) > altitudeTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the east-west distance between two packed positions, the int difference of longitudes wrapping around the
+    // antimeridian.
+    private static double dx(long from, long to, double metersPerLongitudeT32) {
+        return (GeoPos.unpackLon(to) - GeoPos.unpackLon(from)) * metersPerLongitudeT32;
+    }
+
+    private static double dy(long from, long to) {
+        return ((double) GeoPos.unpackLat(to) - GeoPos.unpackLat(from)) * Units.Angle.T32 * EARTH_RADIUS;
+    }
+
+    private void removeOldest() {
+        AirbornePos removed = get(0);
+        head = (head + 1) % positions.length;
+        size--;
+        nextRemove(0, removed);
+    }
+
+    // the buffer is full when it grows, so its points are unrolled from head to the end of the arrays, then from 0.
+    private void grow() {
+        int capacity = Math.min(maxPoints, 2 * positions.length);
+        long[] newPositions = new long[capacity];
+        double[] newAltitudes = new double[capacity];
+        long[] newTimeStamps = new long[capacity];
+        int firstPart = positions.length - head;
+        System.arraycopy(positions, head, newPositions, 0, firstPart);
+        System.arraycopy(positions, 0, newPositions, firstPart, head);
+        System.arraycopy(altitudes, head, newAltitudes, 0, firstPart);
+        System.arraycopy(altitudes, 0, newAltitudes, firstPart, head);
+        System.arraycopy(timeStamps, head, newTimeStamps, 0, firstPart);
+        System.arraycopy(timeStamps, 0, newTimeStamps, firstPart, head);
+        positions = newPositions;
+        altitudes = newAltitudes;
+        timeStamps = newTimeStamps;
+        head = 0;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return (head + index) % positions.length;
+    }
+}
@@ -112,14 +112,17 @@ public final class essai extends Application {
 
 
         new AnimationTimer() {
+            private long purge;
+
             @Override
             public void handle(long now) {
-                try {
-                    while (!messageQueue.isEmpty()){
-                        Message m = MessageParser.parse( messageQueue.remove());
-                        if (m != null) asm.updateWithMessage(m);}
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+                while (!messageQueue.isEmpty()){
+                    Message m = MessageParser.parse( messageQueue.remove());
+                    if (m != null) asm.updateWithMessage(m);}
+                asm.publish();
+                if (now - purge >= 1_000_000_000) {
+                    asm.purge();
+                    purge = now;
                 }
             }
         }.start();
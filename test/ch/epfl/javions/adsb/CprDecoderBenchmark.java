@@ -0,0 +1,131 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.GeoPos;
+
+import java.util.Random;
+
+import static ch.epfl.javions.Units.Angle.*;
+import static ch.epfl.javions.Units.convert;
+
+/**
+ * La classe CprDecoderBenchmark publique et finale compare le débit de CprDecoder.decodePosition, qui obtient le
+ * nombre de zones de longitude par recherche dichotomique dans une table, à celui du décodage d'origine, qui évalue la
+ * formule trigonométrique deux fois par position. Les deux décodages sont appliqués aux mêmes paires de positions
+ * locales, et leurs résultats sont comparés.
+ * <p>
+ * {@code java ch.epfl.javions.adsb.CprDecoderBenchmark [décodages par tour]}
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class CprDecoderBenchmark {
+
+    private static final int DEFAULT_DECODES = 10_000_000;
+    private static final int ROUNDS = 5;
+    private static final int POOL_SIZE = 1 << 12;
+    private static final int CPR_BITS = 17;
+    private static final double ZPHI0 = 60d;
+    private static final double ZPHI1 = 59d;
+    private static final double BOUND = 0.5d;
+
+    private CprDecoderBenchmark() {
+    }
+
+
+    /**
+     * Le programme principal exécute le banc d'essai et affiche, pour chaque tour, le débit de chaque décodage.
+     *
+     * @param args le nombre de décodages par tour (facultatif)
+     */
+    public static void main(String[] args) {
+        int decodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DECODES;
+        Random random = new Random(decodes);
+        double[] pool = new double[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = random.nextInt(1 << CPR_BITS) / (double) (1 << CPR_BITS);
+        }
+
+        long mismatches = 0;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            GeoPos expected = decodeWithFormula(pool[i], pool[(i + 1) % POOL_SIZE], pool[(i + 2) % POOL_SIZE],
+                    pool[(i + 3) % POOL_SIZE], i & 1);
+            GeoPos actual = CprDecoder.decodePosition(pool[i], pool[(i + 1) % POOL_SIZE], pool[(i + 2) % POOL_SIZE],
+                    pool[(i + 3) % POOL_SIZE], i & 1);
+            if (expected == null ? actual != null : !expected.equals(actual)) mismatches++;
+        }
+        System.out.printf("%d positions comparées, %d différences%n", POOL_SIZE, mismatches);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long formula = run(pool, decodes, true);
+            long table = run(pool, decodes, false);
+            System.out.printf("tour %d : formule %.1f M décodages/s, table %.1f M décodages/s%n",
+                    round, decodes * 1E3 / formula, decodes * 1E3 / table);
+        }
+    }
+
+
+    // La somme des latitudes décodées est affichée pour que le compilateur ne puisse pas supprimer les décodages.
+    private static long run(double[] pool, int decodes, boolean formula) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < decodes; i++) {
+            int m = i & (POOL_SIZE - 1);
+            double x0 = pool[m];
+            double y0 = pool[(m + 1) & (POOL_SIZE - 1)];
+            double x1 = pool[(m + 2) & (POOL_SIZE - 1)];
+            double y1 = pool[(m + 3) & (POOL_SIZE - 1)];
+            GeoPos position = formula
+                    ? decodeWithFormula(x0, y0, x1, y1, i & 1)
+                    : CprDecoder.decodePosition(x0, y0, x1, y1, i & 1);
+            if (position != null) checksum += position.latitudeT32();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) System.out.println();
+        return elapsed;
+    }
+
+
+    // Le décodage d'origine, qui calcule le nombre de zones de longitude de chaque latitude au moyen de la formule.
+    private static GeoPos decodeWithFormula(double x0, double y0, double x1, double y1, int mostRecent) {
+        double zphi = Math.rint(y0 * ZPHI1 - y1 * ZPHI0);
+        double zphi0 = zphi < 0 ? zphi + ZPHI0 : zphi;
+        double zphi1 = zphi < 0 ? zphi + ZPHI1 : zphi;
+        double phi0Turn = (zphi0 + y0) / ZPHI0;
+        double phi1Turn = (zphi1 + y1) / ZPHI1;
+
+        double zl0Count = zonesFormula(convert(phi0Turn, TURN, RADIAN));
+        double zl1Count = zonesFormula(convert(phi1Turn, TURN, RADIAN));
+        double lambda0Turn = x0;
+        double lambda1Turn = x1;
+        if (!Double.isNaN(zl0Count)) {
+            if (zl0Count != zl1Count) return null;
+            double zl = Math.rint(x0 * (zl0Count - 1) - x1 * zl0Count);
+            double zl0 = zl < 0 ? zl + zl0Count : zl;
+            double zl1 = zl < 0 ? zl + zl0Count - 1 : zl;
+            if (zl0Count != 1) {
+                lambda0Turn = (zl0 + x0) / zl0Count;
+                lambda1Turn = (zl1 + x1) / (zl0Count - 1);
+            }
+        }
+
+        if (phi0Turn >= BOUND) phi0Turn -= 1;
+        if (phi1Turn >= BOUND) phi1Turn -= 1;
+        if (lambda0Turn >= BOUND) lambda0Turn -= 1;
+        if (lambda1Turn >= BOUND) lambda1Turn -= 1;
+
+        int phi0 = (int) Math.rint(convert(phi0Turn, TURN, T32));
+        int phi1 = (int) Math.rint(convert(phi1Turn, TURN, T32));
+        if (!GeoPos.isValidLatitudeT32(phi0) || !GeoPos.isValidLatitudeT32(phi1)) return null;
+        return mostRecent == 0
+                ? new GeoPos((int) Math.rint(convert(lambda0Turn, TURN, T32)), phi0)
+                : new GeoPos((int) Math.rint(convert(lambda1Turn, TURN, T32)), phi1);
+    }
+
+
+    // le nombre de zones de longitude, NaN au-delà de la dernière limite (une seule zone).
+    private static double zonesFormula(double phiRadian) {
+        double c = (1 - Math.cos(2d * Math.PI / ZPHI0)) / Math.pow(Math.cos(phiRadian), 2);
+        return Math.floor(2d * Math.PI / Math.acos(1 - c));
+    }
+
+}
@@ -0,0 +1,104 @@
+package ch.epfl.javions.aircraft;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * La classe IcaoMapBenchmark publique et finale compare IcaoMap à une HashMap indexée par IcaoAddress, dans les
+ * conditions du gestionnaire d'états d'aéronefs : un nombre donné d'aéronefs actifs, chaque message portant une
+ * nouvelle instance d'IcaoAddress, et un renouvellement progressif des aéronefs suivis.
+ * <p>
+ * {@code java ch.epfl.javions.aircraft.IcaoMapBenchmark [aéronefs actifs]}
+ *
+ * @author Marwa Chiguer (325221)
+ * @author Imane Oujja (344332)
+ */
+public final class IcaoMapBenchmark {
+
+    private static final int DEFAULT_ACTIVE_AIRCRAFT = 10_000;
+    private static final int MESSAGES = 2_000_000;
+    private static final int ROUNDS = 5;
+    private static final int RENEWAL_PERIOD = 100;
+    private static final int KEY_BITS = 24;
+    private static final String FORMAT = "%06X";
+
+    private IcaoMapBenchmark() {
+    }
+
+
+    /**
+     * Le programme principal exécute le banc d'essai et affiche le temps moyen par message de chaque table.
+     *
+     * @param args le nombre d'aéronefs actifs (facultatif)
+     */
+    public static void main(String[] args) {
+        int active = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ACTIVE_AIRCRAFT;
+        Random random = new Random(active);
+        String[] fleet = new String[2 * active];
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i] = String.format(FORMAT, random.nextInt(1 << KEY_BITS));
+        }
+        int[] messages = new int[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = random.nextInt(active);
+        }
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long hashMap = runHashMap(fleet, messages);
+            long icaoMap = runIcaoMap(fleet, messages);
+            System.out.printf("tour %d : HashMap %.1f ns/message, IcaoMap %.1f ns/message%n",
+                    round, (double) hashMap / MESSAGES, (double) icaoMap / MESSAGES);
+        }
+    }
+
+
+    // Chaque message consulte l'aéronef qui l'a émis et l'ajoute s'il est absent ; périodiquement, un aéronef actif
+    // est remplacé par un autre, comme lors d'une purge.
+    private static long runHashMap(String[] fleet, int[] messages) {
+        Map<IcaoAddress, int[]> map = new HashMap<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < messages.length; i++) {
+            int aircraft = slide(messages[i], i, fleet.length);
+            // une nouvelle chaîne, comme celle produite par le décodage de chaque message
+            IcaoAddress address = new IcaoAddress(new String(fleet[aircraft]));
+            int[] state = map.get(address);
+            if (state == null) {
+                state = new int[1];
+                map.put(address, state);
+            }
+            state[0]++;
+            if (i % RENEWAL_PERIOD == 0) {
+                map.remove(new IcaoAddress(new String(fleet[slide(0, i, fleet.length)])));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+
+    private static long runIcaoMap(String[] fleet, int[] messages) {
+        IcaoMap<int[]> map = new IcaoMap<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < messages.length; i++) {
+            int aircraft = slide(messages[i], i, fleet.length);
+            int key = new IcaoAddress(new String(fleet[aircraft])).asInt();
+            int[] state = map.get(key);
+            if (state == null) {
+                state = new int[1];
+                map.put(key, state);
+            }
+            state[0]++;
+            if (i % RENEWAL_PERIOD == 0) {
+                map.remove(new IcaoAddress(new String(fleet[slide(0, i, fleet.length)])).asInt());
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+
+    // Méthode qui décale la fenêtre des aéronefs actifs au fil des messages, pour simuler leur renouvellement.
+    private static int slide(int aircraft, int message, int fleetSize) {
+        return (aircraft + message / RENEWAL_PERIOD) % fleetSize;
+    }
+
+}